@@ -0,0 +1,34 @@
+package com.pure.redis.bench;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 跑两遍:吞吐量(ops/s)和采样延迟(us,输出p50/p99/p999)
+ *
+ * <p>java -jar benchmarks/target/benchmarks.jar [include正则]
+ */
+public class BenchmarkRunner {
+  public static void main(String[] args) throws RunnerException {
+    String include = args.length > 0 ? args[0] : "com.pure.redis.*Benchmark";
+    Options throughput =
+        new OptionsBuilder()
+            .include(include)
+            .mode(Mode.Throughput)
+            .timeUnit(TimeUnit.SECONDS)
+            .build();
+    Options latency =
+        new OptionsBuilder()
+            .include(include)
+            .mode(Mode.SampleTime)
+            .timeUnit(TimeUnit.MICROSECONDS)
+            .build();
+    new Runner(throughput).run();
+    new Runner(latency).run();
+  }
+}
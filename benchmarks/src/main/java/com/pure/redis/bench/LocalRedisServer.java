@@ -0,0 +1,104 @@
+package com.pure.redis.bench;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+
+/** 在随机端口启动一个本地redis-server,基准测试结束时关闭 可用-Dredis.server指定可执行文件路径 */
+public class LocalRedisServer implements AutoCloseable {
+  private final Process process;
+  private final int port;
+  private final JedisPool pool;
+
+  private LocalRedisServer(Process process, int port) {
+    this.process = process;
+    this.port = port;
+    JedisPoolConfig config = new JedisPoolConfig();
+    config.setMaxTotal(256);
+    config.setMaxIdle(256);
+    this.pool = new JedisPool(config, "127.0.0.1", port);
+  }
+
+  public static LocalRedisServer start() throws IOException, InterruptedException {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    String executable = System.getProperty("redis.server", "redis-server");
+    Process process =
+        new ProcessBuilder(
+                executable,
+                "--port", String.valueOf(port),
+                "--bind", "127.0.0.1",
+                "--save", "",
+                "--appendonly", "no")
+            .redirectOutput(
+                new File(System.getProperty("java.io.tmpdir"), "bench-redis-" + port + ".log"))
+            .redirectErrorStream(true)
+            .start();
+    LocalRedisServer server = new LocalRedisServer(process, port);
+    server.awaitReady();
+    return server;
+  }
+
+  /**
+   * 启动多个独立节点,分片基准用 任一节点启动失败时关闭已启动的节点
+   *
+   * @param count
+   * @return
+   */
+  public static List<LocalRedisServer> startAll(int count)
+      throws IOException, InterruptedException {
+    List<LocalRedisServer> servers = new ArrayList<>(count);
+    try {
+      for (int i = 0; i < count; i++) {
+        servers.add(start());
+      }
+    } catch (IOException | InterruptedException | RuntimeException e) {
+      servers.forEach(LocalRedisServer::close);
+      throw e;
+    }
+    return servers;
+  }
+
+  public int getPort() {
+    return port;
+  }
+
+  public JedisPool getPool() {
+    return pool;
+  }
+
+  public Jedis connect() {
+    return pool.getResource();
+  }
+
+  private void awaitReady() throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (true) {
+      try (Jedis jedis = new Jedis("127.0.0.1", port)) {
+        if ("PONG".equals(jedis.ping())) {
+          return;
+        }
+      } catch (RuntimeException e) {
+        if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+          close();
+          throw new IllegalStateException("redis-server did not start on port " + port, e);
+        }
+      }
+      Thread.sleep(20);
+    }
+  }
+
+  @Override
+  public void close() {
+    pool.close();
+    process.destroy();
+  }
+}
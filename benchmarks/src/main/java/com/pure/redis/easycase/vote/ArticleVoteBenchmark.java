@@ -0,0 +1,97 @@
+package com.pure.redis.easycase.vote;
+
+import com.pure.redis.bench.LocalRedisServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/** voteArticle/postArticle/getArticles */
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ArticleVoteBenchmark {
+  private static final int ARTICLES = 1000;
+
+  @State(Scope.Benchmark)
+  public static class Server {
+    @Param({"false", "true"})
+    public boolean pageCache;
+
+    @Param({"set", "bitmap"})
+    public String dedup;
+
+    LocalRedisServer redis;
+    String[] articleIds = new String[ARTICLES];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      ArticleVote.setVoteDedup(new VoteDedup("bitmap".equals(dedup), false));
+      redis = LocalRedisServer.start();
+      try (Jedis jedis = redis.connect()) {
+        ArticleVote.loadScripts(jedis);
+        for (int i = 0; i < ARTICLES; i++) {
+          articleIds[i] = ArticleVote.postArticle(jedis, "user" + i, "title" + i, "http://t/" + i);
+        }
+      }
+      if (pageCache) {
+        ArticleVote.enablePageCache(100, 1000);
+      } else {
+        ArticleVote.disablePageCache();
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      ArticleVote.disablePageCache();
+      ArticleVote.setVoteDedup(VoteDedup.SETS);
+      redis.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Conn {
+    Jedis jedis;
+
+    @Setup(Level.Trial)
+    public void setup(Server server) {
+      jedis = server.redis.connect();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      jedis.close();
+    }
+  }
+
+  @Benchmark
+  public VoteResult voteArticle(Server server, Conn conn) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String articleId = server.articleIds[random.nextInt(ARTICLES)];
+    return ArticleVote.voteArticle(
+        conn.jedis, String.valueOf(random.nextInt(1_000_000)), articleId, random.nextBoolean());
+  }
+
+  @Benchmark
+  public String postArticle(Conn conn) {
+    return ArticleVote.postArticle(conn.jedis, "author", "A title", "http://www.google.com");
+  }
+
+  @Benchmark
+  public List<Map<String, String>> getArticles(Conn conn) {
+    return ArticleVote.getArticles(conn.jedis, 1, "articleScore:");
+  }
+}
@@ -0,0 +1,77 @@
+package com.pure.redis.easycase.vote;
+
+import com.pure.redis.bench.LocalRedisServer;
+import com.pure.redis.util.ShardRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/** ShardedArticles在1/2/4个本地节点上的吞吐量,线程数固定,比较节点数带来的扩展 */
+@Fork(1)
+@Threads(16)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ShardedArticlesBenchmark {
+  private static final int ARTICLES = 1000;
+
+  @State(Scope.Benchmark)
+  public static class Cluster {
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    List<LocalRedisServer> servers;
+    ShardedArticles articles;
+    String[] articleIds = new String[ARTICLES];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      servers = LocalRedisServer.startAll(nodes);
+      ShardRouter router =
+          new ShardRouter(
+              servers.stream().map(LocalRedisServer::getPool).collect(Collectors.toList()), 16);
+      articles = new ShardedArticles(router);
+      for (int i = 0; i < ARTICLES; i++) {
+        articleIds[i] =
+            articles.postArticle("user" + i, "title" + i, "http://t/" + i, new String[0]);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      servers.forEach(LocalRedisServer::close);
+    }
+  }
+
+  @Benchmark
+  public VoteResult voteArticle(Cluster cluster) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String articleId = cluster.articleIds[random.nextInt(ARTICLES)];
+    return cluster.articles.voteArticle(
+        String.valueOf(random.nextInt(1_000_000)), articleId, random.nextBoolean());
+  }
+
+  @Benchmark
+  public String postArticle(Cluster cluster) {
+    return cluster.articles.postArticle(
+        "author", "A title", "http://www.google.com", new String[0]);
+  }
+
+  /** 每个节点一次往返取前N名再合并,节点越多这一项越慢 */
+  @Benchmark
+  public List<Map<String, String>> getArticles(Cluster cluster) {
+    return cluster.articles.getArticles(1, "articleScore:");
+  }
+}
@@ -0,0 +1,90 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.bench.LocalRedisServer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+/** CacheRows刷新循环 每次调用领取并刷新一批到期行,rows计数为每秒刷新的行数 */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CacheRowsBenchmark {
+  private static final int ROWS = 200000;
+
+  @State(Scope.Benchmark)
+  public static class Server {
+    LocalRedisServer redis;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      redis = LocalRedisServer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      redis.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Worker {
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    Jedis jedis;
+    CacheRows cacheRows;
+
+    @Setup(Level.Trial)
+    public void setup(Server server) {
+      jedis = server.redis.connect();
+      cacheRows = new CacheRows(jedis, batchSize, 4);
+    }
+
+    /** 每轮开始时把所有行设为到期 */
+    @Setup(Level.Iteration)
+    public void schedule() {
+      Pipeline pipeline = jedis.pipelined();
+      for (int i = 0; i < ROWS; i++) {
+        pipeline.zadd("delay:", 3600, "row" + i);
+        pipeline.zadd("schedule:", 0, "row" + i);
+      }
+      pipeline.sync();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      cacheRows.quit();
+      cacheRows.shutdownWorkers();
+      jedis.close();
+    }
+  }
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Rows {
+    public long rows;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      rows = 0;
+    }
+  }
+
+  @Benchmark
+  public int refreshBatch(Worker worker, Rows rows) {
+    int claimed = worker.cacheRows.refreshBatch();
+    rows.rows += claimed;
+    return claimed;
+  }
+}
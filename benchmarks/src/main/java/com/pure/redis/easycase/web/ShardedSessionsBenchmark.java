@@ -0,0 +1,91 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.bench.LocalRedisServer;
+import com.pure.redis.util.ShardRouter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/** ShardedSessions在1/2/4个本地节点上的吞吐量,线程数固定,比较节点数带来的扩展 */
+@Fork(1)
+@Threads(16)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ShardedSessionsBenchmark {
+  private static final int PRODUCTS = 10000;
+  private static final int BATCH = 20;
+
+  @State(Scope.Benchmark)
+  public static class Cluster {
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    @Param({"0", "64"})
+    public int buckets;
+
+    List<LocalRedisServer> servers;
+    ShardedSessions sessions;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      servers = LocalRedisServer.startAll(nodes);
+      ShardRouter router =
+          new ShardRouter(
+              servers.stream().map(LocalRedisServer::getPool).collect(Collectors.toList()), 16);
+      sessions = new ShardedSessions(router, buckets);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      servers.forEach(LocalRedisServer::close);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+    String[] tokens = new String[BATCH];
+    long counter;
+
+    @Setup(Level.Trial)
+    public void setup(Cluster cluster) {
+      for (int i = 0; i < BATCH; i++) {
+        tokens[i] = UUID.randomUUID().toString();
+        cluster.sessions.updateToken(tokens[i], "username", "prod0");
+      }
+    }
+  }
+
+  @Benchmark
+  public void updateToken(Cluster cluster, Client client) {
+    String token = client.tokens[(int) (client.counter % BATCH)];
+    cluster.sessions.updateToken(token, "username", "prod" + (client.counter++ % PRODUCTS));
+  }
+
+  /** 一批会话按节点分组,每个节点一次往返 */
+  @Benchmark
+  public void updateTokens(Cluster cluster, Client client) {
+    List<TokenHit> hits = new ArrayList<>(BATCH);
+    for (String token : client.tokens) {
+      hits.add(new TokenHit(token, "username", "prod" + (client.counter++ % PRODUCTS)));
+    }
+    cluster.sessions.updateTokens(hits);
+  }
+
+  @Benchmark
+  public String checkToken(Cluster cluster, Client client) {
+    return cluster.sessions.checkToken(client.tokens[(int) (client.counter++ % BATCH)]);
+  }
+}
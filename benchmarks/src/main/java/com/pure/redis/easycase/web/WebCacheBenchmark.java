@@ -0,0 +1,117 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.bench.LocalRedisServer;
+import com.pure.redis.util.NearCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.UUID;
+
+/** updateToken/checkToken/cacheRequest/canCache */
+@Fork(1)
+@Threads(4)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class WebCacheBenchmark {
+  private static final int PRODUCTS = 10000;
+  private static final String HIT_URL = "http://bench.test/?prod=prod1";
+  private static final Callback CALLBACK = request -> "content for " + request;
+
+  @State(Scope.Benchmark)
+  public static class Server {
+    @Param({"false", "true"})
+    public boolean nearCache;
+
+    @Param({"false", "true"})
+    public boolean topViewedSnapshot;
+
+    LocalRedisServer redis;
+    WebCache webCache;
+    TopViewedSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+      redis = LocalRedisServer.start();
+      webCache = nearCache ? new WebCache(new NearCache<>(PRODUCTS, 300)) : new WebCache();
+      try (Jedis jedis = redis.connect()) {
+        // 所有商品都在前10000名内,canCache放行
+        Pipeline pipeline = jedis.pipelined();
+        for (int i = 0; i < PRODUCTS; i++) {
+          pipeline.zadd("viewed:", -PRODUCTS + i, "prod" + i);
+        }
+        pipeline.sync();
+        webCache.cacheRequest(jedis, CALLBACK, HIT_URL);
+      }
+      if (topViewedSnapshot) {
+        snapshot = new TopViewedSnapshot(redis.getPool(), WebCache.TOP_VIEWED, 5000, 30000).start();
+        webCache.setTopViewed(snapshot);
+      }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      if (snapshot != null) {
+        snapshot.close();
+      }
+      redis.close();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Conn {
+    Jedis jedis;
+    String token;
+    long counter;
+
+    @Setup(Level.Trial)
+    public void setup(Server server) {
+      jedis = server.redis.connect();
+      token = UUID.randomUUID().toString();
+      server.webCache.updateToken(jedis, token, "username", "prod0");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      jedis.close();
+    }
+  }
+
+  @Benchmark
+  public void updateToken(Server server, Conn conn) {
+    server.webCache.updateToken(
+        conn.jedis, conn.token, "username", "prod" + (conn.counter++ % PRODUCTS));
+  }
+
+  @Benchmark
+  public String checkToken(Server server, Conn conn) {
+    return server.webCache.checkToken(conn.jedis, conn.token);
+  }
+
+  @Benchmark
+  public String cacheRequestHit(Server server, Conn conn) {
+    return server.webCache.cacheRequest(conn.jedis, CALLBACK, HIT_URL);
+  }
+
+  @Benchmark
+  public String cacheRequestMiss(Server server, Conn conn) {
+    // 每次不同的请求,必然未命中
+    String url = "http://bench.test/?prod=prod1&v=" + conn.token + conn.counter++;
+    return server.webCache.cacheRequest(conn.jedis, CALLBACK, url);
+  }
+
+  @Benchmark
+  public Boolean canCache(Server server, Conn conn) {
+    return server.webCache.canCache(conn.jedis, HIT_URL);
+  }
+}
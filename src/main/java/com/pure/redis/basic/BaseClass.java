@@ -1,10 +1,10 @@
 package com.pure.redis.basic;
 
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolAbstract;
 
 public class BaseClass {
-    public static Jedis getJedis(JedisPool jedisPool) {
+    public static Jedis getJedis(JedisPoolAbstract jedisPool) {
         return jedisPool.getResource();
     }
     public static void closeJedis(Jedis jedis){
@@ -12,7 +12,7 @@ public class BaseClass {
             jedis.close();
         }
     }
-    public static void closePool(JedisPool pool){
+    public static void closePool(JedisPoolAbstract pool){
         if (pool != null){
             pool.close();
         }
@@ -3,7 +3,6 @@ package com.pure.redis.basic;
 import com.pure.redis.util.JedisUtis;
 import lombok.extern.slf4j.Slf4j;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.Tuple;
 
 import java.util.HashMap;
@@ -17,10 +16,8 @@ public class DataOptTest extends BaseClass {
   /** 基本字符串操作k-v */
   public static void stringOpt() {
     Jedis jedis = null;
-    JedisPool jedisPool = null;
     try {
-      jedisPool = JedisUtis.getJedisPool();
-      jedis = getJedis(jedisPool);
+      jedis = getJedis(JedisUtis.getJedisPool());
       String status = jedis.set("hello", "world");
       log.info("status:{}", status);
       log.info(jedis.get("hello"));
@@ -31,13 +28,11 @@ public class DataOptTest extends BaseClass {
     } finally {
       closeJedis(jedis);
     }
-    closePool(jedisPool);
   }
 
   /** 基本列表操作k-{v1..vn}可重复.插入的顺序 */
   public static void listOpt() {
-    try (JedisPool jedisPool = JedisUtis.getJedisPool();
-        Jedis jedis = getJedis(jedisPool)) {
+    try (Jedis jedis = getJedis(JedisUtis.getJedisPool())) {
       // push
       jedis.rpush("list-key", "item1", "item2", "item3");
       // getAll
@@ -57,10 +52,8 @@ public class DataOptTest extends BaseClass {
   /** 基本集合操作k-{v1...vn}不重复,无序 */
   public static void setOpt() {
     Jedis jedis = null;
-    JedisPool jedisPool = null;
     try {
-      jedisPool = JedisUtis.getJedisPool();
-      jedis = getJedis(jedisPool);
+      jedis = getJedis(JedisUtis.getJedisPool());
       jedis.sadd("set-key", "set-item1", "set-item2");
       Long addElems = jedis.sadd("set-key", "set-item1");
       log.info("add elem num:{}", addElems);
@@ -78,16 +71,13 @@ public class DataOptTest extends BaseClass {
     } finally {
       closeJedis(jedis);
     }
-    closePool(jedisPool);
   }
 
   /** 基本哈希操作key{sub-key val1,sub-key2,val2}... key不重复*/
   public static void hashOpt() {
     Jedis jedis = null;
-    JedisPool jedisPool = null;
     try {
-      jedisPool = JedisUtis.getJedisPool();
-      jedis = getJedis(jedisPool);
+      jedis = getJedis(JedisUtis.getJedisPool());
       Map<String, String> map = new HashMap<>();
       map.put("key1", "val1");
       map.put("key2", "val2");
@@ -106,16 +96,13 @@ public class DataOptTest extends BaseClass {
     } finally {
       closeJedis(jedis);
     }
-    closePool(jedisPool);
   }
 
   /** zset基本操作key:{member0：score0...} 不重复分值排序*/
   public static void sortedSetOpt() {
     Jedis jedis = null;
-    JedisPool jedisPool = null;
     try {
-      jedisPool = JedisUtis.getJedisPool();
-      jedis = getJedis(jedisPool);
+      jedis = getJedis(JedisUtis.getJedisPool());
       jedis.zadd("zset-key", 567D, "mem1");
       jedis.zadd("zset-key", 676D, "mem2");
       jedis.zadd("zset-key", 454D, "mem3");
@@ -131,7 +118,6 @@ public class DataOptTest extends BaseClass {
     } finally {
       closeJedis(jedis);
     }
-    closePool(jedisPool);
   }
 
   public static void main(String[] args) {
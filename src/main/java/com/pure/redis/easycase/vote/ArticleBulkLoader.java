@@ -0,0 +1,638 @@
+package com.pure.redis.easycase.vote;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.pure.redis.util.LuaScript;
+import com.pure.redis.util.RedisPools;
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 文章/投票/分组的批量导入 逐行流式读取CSV或NDJSON,按批pipeline写入,或输出RESP给redis-cli --pipe
+ *
+ * <p>写入的key与postArticle/voteArticle/addGroup一致;文章和投票用脚本导入,重复导入同一行不会重复计分,
+ * 投票不检查投票期也不进小时热度桶。结束时更新article:计数器、重建涉及的分组排行并递增这些排行的rankVersion:
+ *
+ * <p>每批写入确认后记录检查点(输入文件.checkpoint),中断后再次运行从检查点继续,最多重放一批。
+ * 一批里有命令失败时检查点停在这批之前,导入失败退出,修复后重新运行会重放这一批。
+ * 无法解析或缺字段的行记为坏行跳过,计入getRecordErrors,结束时退出码为2。
+ * 已过投票期的文章去重key会立即过期,这类文章的投票重放时会重复计分
+ *
+ * <p>投票只写全局排行,脚本不访问KEYS以外的key;分组排行在结束时整体重建,包括本次输入里的分组,
+ * 以及直接写入redis时每批投票涉及文章的已有分组。输出RESP时读不到已有分组,这些分组导入后用ArticleVote.rebuildGroupRanking重建
+ *
+ * <p>CSV:article,id,user,title,link,postTime[,分组;分组] | vote,id,user,up/down | group,id,分组
+ *
+ * <p>NDJSON:{"type":"article","id":..,"user":..,"title":..,"link":..,"time":..,"groups":[..]}
+ * | {"type":"vote","id":..,"user":..,"up":true} | {"type":"group","id":..,"group":..}
+ */
+@Slf4j
+public class ArticleBulkLoader {
+  private static final LuaScript ARTICLE_SCRIPT = LuaScript.fromResource("lua/bulk_article.lua");
+  private static final LuaScript VOTE_SCRIPT = LuaScript.fromResource("lua/bulk_vote.lua");
+  /** 计数器只增不减 */
+  private static final String RAISE_COUNTER =
+      "if tonumber(redis.call('GET', KEYS[1]) or '0') < tonumber(ARGV[1]) then "
+          + "redis.call('SET', KEYS[1], ARGV[1]) end";
+  private static final long PROGRESS_MILLIS = 5000;
+
+  private final Sink sink;
+  private final VoteDedup dedup;
+  private final int batchSize;
+  private final Path checkpoint;
+
+  private long lines;
+  private long keys;
+  /** 无法解析或写入而跳过的行数 */
+  private long recordErrors;
+  /** 开始导入时sink已有的错误数 */
+  private long baseErrors;
+  private long maxId;
+  private final Set<String> groups = new LinkedHashSet<>();
+  /** 本批投票涉及的文章id,确认写入后查出它们的分组 */
+  private final Set<String> batchVotes = new LinkedHashSet<>();
+
+  /**
+   * @param sink 写入目标
+   * @param dedup 投票去重方式,与线上配置保持一致
+   * @param batchSize 每批行数
+   * @param checkpoint 检查点文件,为null时不记录
+   */
+  public ArticleBulkLoader(Sink sink, VoteDedup dedup, int batchSize, Path checkpoint) {
+    this.sink = sink;
+    this.dedup = dedup;
+    this.batchSize = batchSize;
+    this.checkpoint = checkpoint;
+  }
+
+  /**
+   * 导入 有检查点时跳过已导入的行
+   *
+   * @param input
+   * @return 本次导入的行数
+   * @throws IOException
+   */
+  public long load(Path input) throws IOException {
+    boolean json = !input.toString().toLowerCase().endsWith(".csv");
+    long skip = readCheckpoint();
+    baseErrors = sink.errors();
+    sink.command(Protocol.Command.SCRIPT, "LOAD", ARTICLE_SCRIPT.getScript());
+    sink.command(Protocol.Command.SCRIPT, "LOAD", VOTE_SCRIPT.getScript());
+    long start = System.currentTimeMillis();
+    long lastReport = start;
+    long loaded = 0;
+    try (BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+      String line;
+      int inBatch = 0;
+      while ((line = reader.readLine()) != null) {
+        if (lines < skip) {
+          lines++;
+          continue;
+        }
+        lines++;
+        if (!line.trim().isEmpty()) {
+          Record record = parse(json, line);
+          if (record != null) {
+            write(record, line);
+            loaded++;
+          }
+        }
+        if (++inBatch >= batchSize) {
+          flushBatch();
+          inBatch = 0;
+          long now = System.currentTimeMillis();
+          if (now - lastReport >= PROGRESS_MILLIS) {
+            log.info(
+                "bulk load: {} lines, {} keys, {} keys/s",
+                lines,
+                keys,
+                keys * 1000 / Math.max(1, now - start));
+            lastReport = now;
+          }
+        }
+      }
+    }
+    flushBatch();
+    finish();
+    flushBatch();
+    long millis = Math.max(1, System.currentTimeMillis() - start);
+    log.info(
+        "bulk load done: {} records, {} keys in {} ms, {} keys/s, {} skipped lines",
+        loaded,
+        keys,
+        millis,
+        keys * 1000 / millis,
+        recordErrors);
+    if (checkpoint != null) {
+      Files.deleteIfExists(checkpoint);
+    }
+    return loaded;
+  }
+
+  /** 坏行不影响同一批的其他行,返回null */
+  private Record parse(boolean json, String line) {
+    try {
+      Record record = json ? parseJson(line) : parseCsv(line);
+      record.validate();
+      return record;
+    } catch (RuntimeException e) {
+      if (recordErrors++ < 10) {
+        log.warn("skipping line {}: {}", lines, e.toString());
+      }
+      return null;
+    }
+  }
+
+  private void write(Record record, String line) {
+    String article = "article:" + record.id;
+    switch (record.type) {
+      case "article":
+        sink.command(
+            Protocol.Command.EVALSHA,
+            ARTICLE_SCRIPT.getSha(),
+            "7",
+            article,
+            "articleScore:",
+            "postTime:",
+            "voted:" + record.id,
+            "devoted:" + record.id,
+            "votedBits:" + record.id,
+            "devotedBits:" + record.id,
+            article,
+            record.user,
+            record.title,
+            record.link,
+            String.valueOf(record.time),
+            String.valueOf(ArticleVote.VOTE_SCORE),
+            String.valueOf(ArticleVote.ONE_WEEK_SECONDS),
+            dedup.mode(),
+            String.valueOf(dedup.getMaxBitmapUserId()));
+        keys += 7;
+        maxId = Math.max(maxId, parseId(record.id));
+        for (String group : record.groups) {
+          writeGroup(record.id, group);
+        }
+        break;
+      case "vote":
+        List<String> dedupKeys = VoteDedup.keys(record.up, "", record.id);
+        sink.command(
+            Protocol.Command.EVALSHA,
+            VOTE_SCRIPT.getSha(),
+            "6",
+            article,
+            "articleScore:",
+            dedupKeys.get(0),
+            dedupKeys.get(1),
+            dedupKeys.get(2),
+            dedupKeys.get(3),
+            article,
+            record.user,
+            String.valueOf(record.up ? ArticleVote.VOTE_SCORE : -ArticleVote.VOTE_SCORE),
+            record.up ? "votes" : "devotes",
+            String.valueOf(ArticleVote.ONE_WEEK_SECONDS),
+            dedup.mode(),
+            String.valueOf(dedup.getMaxBitmapUserId()));
+        keys += 4;
+        batchVotes.add(record.id);
+        break;
+      case "group":
+        writeGroup(record.id, record.groups.get(0));
+        break;
+      default:
+        throw new IllegalArgumentException("unknown record type at line " + lines + ": " + line);
+    }
+  }
+
+  private void writeGroup(String id, String group) {
+    sink.command(Protocol.Command.SADD, "articleGroup:" + group, "article:" + id);
+    sink.command(Protocol.Command.SADD, "articleGroups:" + id, group);
+    groups.add(group);
+    keys += 2;
+  }
+
+  /** 计数器、分组排行和版本号 */
+  private void finish() {
+    sink.command(Protocol.Command.EVAL, RAISE_COUNTER, "1", "article:", String.valueOf(maxId));
+    for (String group : groups) {
+      String members = "articleGroup:" + group;
+      for (String order : new String[] {"articleScore:", "postTime:"}) {
+        sink.command(
+            Protocol.Command.ZINTERSTORE, order + group, "2", members, order, "AGGREGATE", "MAX");
+        sink.command(Protocol.Command.INCR, "rankVersion:" + order + group);
+      }
+    }
+    sink.command(Protocol.Command.INCR, "rankVersion:articleScore:");
+    sink.command(Protocol.Command.INCR, "rankVersion:postTime:");
+  }
+
+  /** 有命令失败时不推进检查点 */
+  private void flushBatch() throws IOException {
+    sink.flush();
+    long failed = sink.errors() - baseErrors;
+    if (failed > 0) {
+      throw new BulkLoadException(
+          failed
+              + " commands failed in the batch ending at line "
+              + lines
+              + ", checkpoint left before this batch");
+    }
+    // 已有分组记进检查点,中断后继续时结束也会重建
+    groups.addAll(sink.articleGroups(batchVotes));
+    batchVotes.clear();
+    writeCheckpoint();
+  }
+
+  private long readCheckpoint() throws IOException {
+    if (checkpoint == null || !Files.exists(checkpoint)) {
+      return 0;
+    }
+    long skip = 0;
+    for (String line : Files.readAllLines(checkpoint, StandardCharsets.UTF_8)) {
+      if (line.startsWith("lines=")) {
+        skip = Long.parseLong(line.substring("lines=".length()));
+      } else if (line.startsWith("maxId=")) {
+        maxId = Long.parseLong(line.substring("maxId=".length()));
+      } else if (line.startsWith("group=")) {
+        groups.add(line.substring("group=".length()));
+      }
+    }
+    log.info("resuming bulk load from line {}", skip);
+    return skip;
+  }
+
+  /** 先写临时文件再改名,中断时不会留下半个检查点 */
+  private void writeCheckpoint() throws IOException {
+    if (checkpoint == null) {
+      return;
+    }
+    List<String> content = new ArrayList<>(groups.size() + 2);
+    content.add("lines=" + lines);
+    content.add("maxId=" + maxId);
+    groups.forEach(group -> content.add("group=" + group));
+    Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+    Files.write(tmp, content, StandardCharsets.UTF_8);
+    Files.move(
+        tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static long parseId(String id) {
+    try {
+      return Long.parseLong(id);
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  static Record parseJson(String line) {
+    JsonObject json = new JsonParser().parse(line).getAsJsonObject();
+    Record record = new Record(string(json, "type"), string(json, "id"));
+    record.user = string(json, "user");
+    record.title = string(json, "title");
+    record.link = string(json, "link");
+    record.time = json.has("time") ? json.get("time").getAsLong() : 0;
+    record.up = !json.has("up") || json.get("up").getAsBoolean();
+    if (json.has("groups")) {
+      JsonArray groups = json.getAsJsonArray("groups");
+      for (JsonElement group : groups) {
+        record.groups.add(group.getAsString());
+      }
+    }
+    if (json.has("group")) {
+      record.groups.add(string(json, "group"));
+    }
+    return record;
+  }
+
+  static Record parseCsv(String line) {
+    List<String> cols = splitCsv(line);
+    Record record = new Record(cols.get(0), cols.get(1));
+    switch (record.type) {
+      case "article":
+        record.user = cols.get(2);
+        record.title = cols.get(3);
+        record.link = cols.get(4);
+        record.time = Long.parseLong(cols.get(5));
+        if (cols.size() > 6 && !cols.get(6).isEmpty()) {
+          record.groups.addAll(Arrays.asList(cols.get(6).split(";")));
+        }
+        break;
+      case "vote":
+        record.user = cols.get(2);
+        record.up = !"down".equalsIgnoreCase(cols.get(3));
+        break;
+      case "group":
+        record.groups.add(cols.get(2));
+        break;
+      default:
+        break;
+    }
+    return record;
+  }
+
+  /** 逗号分隔,双引号包裹的字段里可以有逗号,两个双引号表示一个 */
+  static List<String> splitCsv(String line) {
+    List<String> cols = new ArrayList<>();
+    StringBuilder col = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          col.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          col.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        cols.add(col.toString());
+        col.setLength(0);
+      } else {
+        col.append(c);
+      }
+    }
+    cols.add(col.toString());
+    return cols;
+  }
+
+  private static String string(JsonObject json, String field) {
+    JsonElement value = json.get(field);
+    return value == null || value.isJsonNull() ? null : value.getAsString();
+  }
+
+  /** 跳过的坏行数 */
+  public long getRecordErrors() {
+    return recordErrors;
+  }
+
+  /** 写入失败,检查点保留在失败的批之前 */
+  public static class BulkLoadException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    BulkLoadException(String message) {
+      super(message);
+    }
+  }
+
+  /** 输入的一行 */
+  static final class Record {
+    final String type;
+    final String id;
+    String user;
+    String title;
+    String link;
+    long time;
+    boolean up = true;
+    final List<String> groups = new ArrayList<>(1);
+
+    Record(String type, String id) {
+      this.type = type;
+      this.id = id;
+    }
+
+    /** 检查类型和必需字段 */
+    void validate() {
+      if (id == null || id.isEmpty()) {
+        throw new IllegalArgumentException("missing id");
+      }
+      boolean complete;
+      switch (String.valueOf(type)) {
+        case "article":
+          complete = user != null && title != null && link != null;
+          break;
+        case "vote":
+          complete = user != null;
+          break;
+        case "group":
+          complete = !groups.isEmpty();
+          break;
+        default:
+          throw new IllegalArgumentException("unknown record type " + type);
+      }
+      if (!complete) {
+        throw new IllegalArgumentException("missing fields for " + type + " " + id);
+      }
+    }
+  }
+
+  /** 写入目标 */
+  public interface Sink extends Closeable {
+    void command(Protocol.Command command, String... args);
+
+    /** 发送缓冲的命令并等待确认 */
+    void flush() throws IOException;
+
+    long errors();
+
+    /**
+     * 文章已有的分组 flush之后调用
+     *
+     * @param articleIds
+     * @return 读不到时返回空集合
+     */
+    default Set<String> articleGroups(Collection<String> articleIds) throws IOException {
+      return Collections.emptySet();
+    }
+  }
+
+  /** pipeline直接写入redis */
+  public static class PipelineSink implements Sink {
+    private final Jedis jedis;
+    private Pipeline pipeline;
+    private final List<Response<Object>> responses = new ArrayList<>();
+    private long errors;
+
+    public PipelineSink(Jedis jedis) {
+      this.jedis = jedis;
+      this.pipeline = jedis.pipelined();
+    }
+
+    @Override
+    public void command(Protocol.Command command, String... args) {
+      responses.add(pipeline.sendCommand(command, args));
+    }
+
+    @Override
+    public void flush() {
+      pipeline.sync();
+      for (Response<Object> response : responses) {
+        try {
+          response.get();
+        } catch (JedisDataException e) {
+          if (errors++ < 10) {
+            log.warn("bulk load command failed: {}", e.getMessage());
+          }
+        }
+      }
+      responses.clear();
+      pipeline = jedis.pipelined();
+    }
+
+    @Override
+    public long errors() {
+      return errors;
+    }
+
+    @Override
+    public Set<String> articleGroups(Collection<String> articleIds) {
+      if (articleIds.isEmpty()) {
+        return Collections.emptySet();
+      }
+      // flush之后pipeline里没有待确认的写入,借它读一次
+      List<Response<Set<String>>> members = new ArrayList<>(articleIds.size());
+      for (String id : articleIds) {
+        members.add(pipeline.smembers("articleGroups:" + id));
+      }
+      pipeline.sync();
+      pipeline = jedis.pipelined();
+      Set<String> groups = new LinkedHashSet<>();
+      members.forEach(response -> groups.addAll(response.get()));
+      return groups;
+    }
+
+    @Override
+    public void close() {
+      jedis.close();
+    }
+  }
+
+  /** 输出RESP协议,用redis-cli --pipe导入 */
+  public static class RespSink implements Sink {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private final OutputStream out;
+
+    public RespSink(OutputStream out) {
+      this.out = new BufferedOutputStream(out, 1 << 16);
+    }
+
+    @Override
+    public void command(Protocol.Command command, String... args) {
+      try {
+        writeHeader('*', args.length + 1);
+        writeBulk(command.getRaw());
+        for (String arg : args) {
+          writeBulk(arg.getBytes(StandardCharsets.UTF_8));
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private void writeHeader(char type, int length) throws IOException {
+      out.write(type);
+      out.write(String.valueOf(length).getBytes(StandardCharsets.US_ASCII));
+      out.write(CRLF);
+    }
+
+    private void writeBulk(byte[] bytes) throws IOException {
+      writeHeader('$', bytes.length);
+      out.write(bytes);
+      out.write(CRLF);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public long errors() {
+      return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * 参数:输入文件 [--resp 输出文件] [--batch 行数,默认10000] [--db 数据库]
+   *
+   * @param args
+   * @throws IOException
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println(
+          "usage: ArticleBulkLoader <input.csv|input.ndjson>"
+              + " [--resp out.resp] [--batch n] [--db n]");
+      return;
+    }
+    Path input = Paths.get(args[0]);
+    String resp = null;
+    int batch = 10000;
+    int db = -1;
+    for (int i = 1; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--resp":
+          resp = args[i + 1];
+          break;
+        case "--batch":
+          batch = Integer.parseInt(args[i + 1]);
+          break;
+        case "--db":
+          db = Integer.parseInt(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("unknown option " + args[i]);
+      }
+    }
+    Sink sink;
+    Path checkpoint = null;
+    if (resp != null) {
+      // RESP输出一次写完,不记录检查点
+      sink = new RespSink(Files.newOutputStream(Paths.get(resp)));
+      if (db >= 0) {
+        sink.command(Protocol.Command.SELECT, String.valueOf(db));
+      }
+    } else {
+      Jedis jedis = RedisPools.worker().getResource();
+      if (db >= 0) {
+        jedis.select(db);
+      }
+      sink = new PipelineSink(jedis);
+      checkpoint = Paths.get(args[0] + ".checkpoint");
+    }
+    try (Sink s = sink) {
+      ArticleBulkLoader loader =
+          new ArticleBulkLoader(s, ArticleVote.getVoteDedup(), batch, checkpoint);
+      loader.load(input);
+      if (loader.getRecordErrors() > 0) {
+        // 坏行重跑也不会成功,检查点照常删除,只用退出码提示
+        System.exit(2);
+      }
+    } catch (BulkLoadException e) {
+      log.error("bulk load failed: {}", e.getMessage());
+      System.exit(1);
+    }
+  }
+}
@@ -2,8 +2,13 @@ package com.pure.redis.easycase.vote;
 
 import com.pure.redis.basic.BaseClass;
 import com.pure.redis.util.JedisUtis;
+import com.pure.redis.util.LuaScript;
+import com.pure.redis.util.NearCache;
+import com.pure.redis.util.RedisMetrics;
+import com.pure.redis.util.RedisPools;
+import com.pure.redis.util.ReplicaRouter;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.ZParams;
 
 import java.util.*;
@@ -11,48 +16,202 @@ import java.util.*;
 /** 需求：文章排行榜,文章根据评分和发布时间排序 一个用户只能投票一次 key:{hash},key:{zset},文章投票key{set} */
 public class ArticleVote extends BaseClass {
   /** 一周的有效期 */
-  private static final int ONE_WEEK_SECONDS = 7 * 86400;
+  static final int ONE_WEEK_SECONDS = 7 * 86400;
   /** 每一票的分数 */
-  private static final double VOTE_SCORE = 432;
+  static final double VOTE_SCORE = 432;
   /** 每页文章数 */
-  private static final int ARTICLE_PRE_PAGE = 25;
+  static final int ARTICLE_PRE_PAGE = 25;
+
+  /** 投票脚本 */
+  private static final LuaScript VOTE_SCRIPT = LuaScript.fromResource("lua/vote_article.lua");
+  /** 发布文章脚本 */
+  private static final LuaScript POST_SCRIPT = LuaScript.fromResource("lua/post_article.lua");
+  /** 文章加入分组脚本 */
+  private static final LuaScript GROUP_SCRIPT = LuaScript.fromResource("lua/add_group.lua");
+  /** 取一页文章脚本 */
+  private static final LuaScript PAGE_SCRIPT = LuaScript.fromResource("lua/get_articles.lua");
+  /** 取最近几小时热门文章的脚本 */
+  private static final LuaScript TRENDING_SCRIPT = LuaScript.fromResource("lua/get_trending.lua");
+  /** 小时桶保留的小时数,也是热门查询能覆盖的最大小时数 */
+  private static final int TREND_HOURS = RedisPools.getConfig().getInt("vote.trendHours", 48);
+  /** 热门结果的缓存秒数 */
+  private static final int TREND_CACHE_SECONDS =
+      RedisPools.getConfig().getInt("vote.trendCacheSeconds", 10);
+  /** 整个排行的版本号前缀,后接排序zset,发布文章/加组/重建排行时递增 */
+  private static final String RANK_VERSION = "rankVersion:";
+  /** 单页版本号的hash前缀,后接排序zset,字段为页号,投票只递增文章所在及名次经过的页 */
+  private static final String PAGE_VERSION = "pageVersion:";
+  /** 一次投票最多逐页作废的页数,名次跨度更大时作废整个排行 */
+  private static final int PAGE_VERSION_SPAN = 8;
+  /** 分组和投票脚本看到的不一致时最多重试的次数 */
+  private static final int GROUP_RETRIES = 3;
+  /** 文章所属分组的本地副本,投票脚本要由调用方传入分组排行的key;过期或不准时脚本返回实际分组后重试 */
+  private static final NearCache<List<String>> ARTICLE_GROUPS = new NearCache<>(10000, 300);
+
+  /** 可选的进程内页面缓存,key为order:page */
+  private static volatile NearCache<ArticlePage> pageCache;
+  /** 页面缓存多久后去redis核对一次版本号 */
+  private static volatile long revalidateMillis;
+  /** 投票去重方式,默认取配置 */
+  private static volatile VoteDedup voteDedup = VoteDedup.fromConfig();
+  /** 可选的读副本路由,为null时文章页读主库 */
+  private static volatile ReplicaRouter replicaRouter;
+
+  /**
+   * 启动时预加载脚本
+   *
+   * @param jedis
+   */
+  public static void loadScripts(Jedis jedis) {
+    VOTE_SCRIPT.load(jedis);
+    TRENDING_SCRIPT.load(jedis);
+    POST_SCRIPT.load(jedis);
+    PAGE_SCRIPT.load(jedis);
+    GROUP_SCRIPT.load(jedis);
+  }
+
+  /**
+   * 开启页面缓存 revalidateMillis内直接返回本地页面,之后用一次往返核对版本号,版本没变不再传输页面内容
+   *
+   * <p>版本号按排行和页分开,一次投票只作废这篇文章所在的页,不影响其它排行和页
+   *
+   * @param maxPages 最多缓存的页数
+   * @param revalidateMillis 本地页面免核对的时长
+   */
+  public static void enablePageCache(int maxPages, long revalidateMillis) {
+    ArticleVote.revalidateMillis = revalidateMillis;
+    ArticleVote.pageCache = new NearCache<>(maxPages, 60);
+  }
+
+  /**
+   * 设置读副本路由 getArticles/getGroupArticles改为读副本,投票后要立即看到结果时用ReplicaRouter.pinPrimary
+   *
+   * @param replicaRouter
+   */
+  public static void setReplicaRouter(ReplicaRouter replicaRouter) {
+    ArticleVote.replicaRouter = replicaRouter;
+  }
+
+  /**
+   * 设置投票去重方式 方式记在文章上,只影响之后发布的文章,已有文章仍按发布时的方式去重
+   *
+   * @param voteDedup
+   */
+  public static void setVoteDedup(VoteDedup voteDedup) {
+    ArticleVote.voteDedup = voteDedup;
+  }
+
+  public static VoteDedup getVoteDedup() {
+    return voteDedup;
+  }
+
+  public static void disablePageCache() {
+    pageCache = null;
+  }
+
+  public static NearCache<ArticlePage> getPageCache() {
+    return pageCache;
+  }
 
   /**
-   * 文章投票 反对票和票切换
+   * 文章投票 反对票和票切换 一次EVALSHA原子完成,同一用户重复投同样的票不计分
    *
    * @param jedis
    * @param userId
    * @param articleId
+   * @return 最新分数和票数,文章不存在或超过投票期返回null
    */
-  public static void voteArticle(Jedis jedis, String userId, String articleId, Boolean isVoted) {
-    long limit = System.currentTimeMillis() / 1000 - ONE_WEEK_SECONDS;
-    if (jedis.zscore("postTime:", "article:" + articleId) < limit) {
-      return;
+  public static VoteResult voteArticle(
+      Jedis jedis, String userId, String articleId, Boolean isVoted) {
+    return voteArticle(jedis, "", userId, articleId, isVoted);
+  }
+
+  /**
+   * 分片时tag为文章所在分区的hash tag,所有key落在同一slot
+   *
+   * <p>脚本用到的key全部由KEYS传入,分组排行的key按本地记录的文章分组给出;脚本发现分组不一致时不写入并返回实际分组,
+   * 按实际分组重试,分组没变时只有一次往返
+   */
+  @SuppressWarnings("unchecked")
+  static VoteResult voteArticle(
+      Jedis jedis, String tag, String userId, String articleId, Boolean isVoted) {
+    VoteDedup dedup = voteDedup;
+    long now = System.currentTimeMillis() / 1000;
+    long hour = now - now % 3600;
+    long limit = now - ONE_WEEK_SECONDS;
+    String article = "article:" + tag + articleId;
+    String groupsKey = tag + articleId;
+    List<String> groups = ARTICLE_GROUPS.get(groupsKey);
+    if (groups == null) {
+      groups = Collections.emptyList();
     }
-    // 新增投票
-    if (isVoted) {
-      if (jedis.sismember("devoted:" + articleId, userId)) {
-        jedis.smove("devoted:" + articleId, "voted:" + articleId, userId);
-      } else {
-        jedis.sadd("voted:" + articleId, userId);
+    for (int attempt = 0; ; attempt++) {
+      List<String> keys = new ArrayList<>(14 + groups.size() * 6);
+      keys.addAll(Arrays.asList("postTime:" + tag, "articleScore:" + tag, article));
+      keys.addAll(VoteDedup.keys(isVoted, tag, articleId));
+      keys.addAll(
+          Arrays.asList(
+              "articleGroups:" + tag + articleId,
+              trendKey(tag, hour),
+              VoteDedup.votersKey(tag, articleId)));
+      keys.addAll(versionKeys("articleScore:" + tag));
+      keys.addAll(versionKeys("postTime:" + tag));
+      for (String group : groups) {
+        keys.add("articleScore:" + tag + group);
+        keys.addAll(versionKeys("articleScore:" + tag + group));
+        keys.add("postTime:" + tag + group);
+        keys.addAll(versionKeys("postTime:" + tag + group));
+      }
+      List<String> args =
+          new ArrayList<>(
+              Arrays.asList(
+                  article,
+                  userId,
+                  String.valueOf(limit),
+                  String.valueOf(isVoted ? VOTE_SCORE : -VOTE_SCORE),
+                  isVoted ? "votes" : "devotes",
+                  String.valueOf(ONE_WEEK_SECONDS),
+                  String.valueOf(hour + (TREND_HOURS + 1) * 3600L),
+                  String.valueOf(dedup.getMaxBitmapUserId()),
+                  String.valueOf(ARTICLE_PRE_PAGE),
+                  String.valueOf(PAGE_VERSION_SPAN),
+                  dedup.isHyperLogLog() ? "1" : "0"));
+      args.addAll(groups);
+      List<String> res =
+          RedisMetrics.time(
+              "voteArticle", () -> (List<String>) VOTE_SCRIPT.eval(jedis, keys, args));
+      if (res == null) {
+        return null;
       }
-      // 加分
-      jedis.zincrby("articleScore:", VOTE_SCORE, "article:" + articleId);
-      // 新增一票
-      jedis.hincrBy("article:" + articleId, "votes", 1);
-    } else {
-      if (jedis.sismember("voted:" + articleId, userId)) {
-        jedis.smove("voted:" + articleId, "devoted:" + articleId, userId);
-      } else {
-        jedis.sadd("devoted:" + articleId, userId);
+      if (!"groups".equals(res.get(0))) {
+        return new VoteResult(
+            Double.parseDouble(res.get(0)), Long.parseLong(res.get(1)), Long.parseLong(res.get(2)));
+      }
+      groups = new ArrayList<>(res.subList(1, res.size()));
+      ARTICLE_GROUPS.put(groupsKey, groups, 300);
+      if (attempt >= GROUP_RETRIES) {
+        throw new IllegalStateException("groups of " + article + " keep changing");
       }
-      jedis.zincrby("articleScore:", -VOTE_SCORE, "article:" + articleId);
-      jedis.hincrBy("article:" + articleId, "devotes", 1);
     }
   }
 
+  /** 排行的整体版本号和单页版本号hash */
+  private static List<String> versionKeys(String ranking) {
+    return Arrays.asList(RANK_VERSION + ranking, PAGE_VERSION + ranking);
+  }
+
+  /** 发布/加组脚本里一个分组用到的key:成员集合,两个分组排行及它们的整体版本号 */
+  private static List<String> groupKeys(String tag, String group) {
+    return Arrays.asList(
+        "articleGroup:" + tag + group,
+        "articleScore:" + tag + group,
+        "postTime:" + tag + group,
+        RANK_VERSION + "articleScore:" + tag + group,
+        RANK_VERSION + "postTime:" + tag + group);
+  }
+
   /**
-   * 发布文章
+   * 发布文章 INCR分配id后一次EVALSHA原子写入
    *
    * @param jedis
    * @param user
@@ -61,30 +220,157 @@ public class ArticleVote extends BaseClass {
    * @return
    */
   public static String postArticle(Jedis jedis, String user, String title, String link) {
-    // ArticleKey
-    String articleId = String.valueOf(jedis.incr("article:"));
-    String voted = "voted:" + articleId;
-    // 自己也算一票
-    jedis.sadd(voted, user);
-    jedis.expire(voted, ONE_WEEK_SECONDS);
+    return postArticle(jedis, user, title, link, new String[0]);
+  }
+
+  /**
+   * 发布文章并加入分组 INCR分配id后一次EVALSHA原子写入,分组排行同时写入
+   *
+   * @param jedis
+   * @param user
+   * @param title
+   * @param link
+   * @param groups
+   * @return
+   */
+  public static String postArticle(
+      Jedis jedis, String user, String title, String link, String[] groups) {
+    return postArticle(jedis, "", 1, 0, user, title, link, groups);
+  }
+
+  /**
+   * 分片时在指定分区发布,返回的id满足 id % partitions == partition
+   *
+   * <p>先INCR分区计数器分配id,脚本用到的key都由id算出后通过KEYS传入
+   */
+  static String postArticle(
+      Jedis jedis,
+      String tag,
+      int partitions,
+      int partition,
+      String user,
+      String title,
+      String link,
+      String[] groups) {
+    VoteDedup dedup = voteDedup;
     long now = System.currentTimeMillis() / 1000;
-    Map<String, String> articleMap = new HashMap<>();
-    articleMap.put("title", title);
-    articleMap.put("link", link);
-    articleMap.put("author", user);
-    articleMap.put("postTime", String.valueOf(now));
-    articleMap.put("votes", "1");
-    articleMap.put("devotes", "0");
-    jedis.hset("article:" + articleId, articleMap);
-    // 初始化分数
-    jedis.zadd("articleScore:", (now + VOTE_SCORE), "article:" + articleId);
-    // 文章排序
-    jedis.zincrby("postTime:", now, "article:" + articleId);
-    return articleId;
+    String id = String.valueOf(jedis.incr("article:" + tag) * partitions + partition);
+    List<String> keys = new ArrayList<>(9 + groups.length * 5);
+    keys.addAll(
+        Arrays.asList(
+            "article:" + tag + id,
+            "articleScore:" + tag,
+            "postTime:" + tag,
+            "voted:" + tag + id,
+            "votedBits:" + tag + id,
+            VoteDedup.votersKey(tag, id),
+            "articleGroups:" + tag + id,
+            RANK_VERSION + "articleScore:" + tag,
+            RANK_VERSION + "postTime:" + tag));
+    for (String group : groups) {
+      keys.addAll(groupKeys(tag, group));
+    }
+    List<String> args =
+        new ArrayList<>(
+            Arrays.asList(
+                user,
+                title,
+                link,
+                String.valueOf(now),
+                String.valueOf(VOTE_SCORE),
+                String.valueOf(ONE_WEEK_SECONDS),
+                dedup.mode(),
+                dedup.isHyperLogLog() ? "1" : "0",
+                String.valueOf(dedup.getMaxBitmapUserId())));
+    args.addAll(Arrays.asList(groups));
+    RedisMetrics.time("postArticle", () -> POST_SCRIPT.eval(jedis, keys, args));
+    ARTICLE_GROUPS.put(tag + id, new ArrayList<>(new LinkedHashSet<>(Arrays.asList(groups))), 300);
+    return id;
   }
 
   /**
-   * 根据分值获取文章
+   * 投票人数的近似值 只统计开启HyperLogLog之后的投票,误差约0.81%
+   *
+   * @param jedis
+   * @param articleId
+   * @return
+   */
+  public static long uniqueVoters(Jedis jedis, String articleId) {
+    return uniqueVoters(jedis, "", articleId);
+  }
+
+  static long uniqueVoters(Jedis jedis, String tag, String articleId) {
+    return jedis.pfcount(VoteDedup.votersKey(tag, articleId));
+  }
+
+  /**
+   * 最近几小时的热门文章 按这段时间内的净得票分排序,包含当前这个未结束的小时
+   *
+   * <p>结果缓存trendCacheSeconds秒;已结束小时的合并结果每小时增量更新一次,读取开销只与最近几个桶的大小有关
+   *
+   * @param jedis
+   * @param hours 1到redis.vote.trendHours
+   * @param page
+   * @return 文章,trendScore为这段时间的得分
+   */
+  public static List<Map<String, String>> getTrending(Jedis jedis, int hours, int page) {
+    int start = (page - 1) * ARTICLE_PRE_PAGE;
+    return getTrending(jedis, "", hours, start, start + ARTICLE_PRE_PAGE - 1);
+  }
+
+  @SuppressWarnings("unchecked")
+  static List<Map<String, String>> getTrending(
+      Jedis jedis, String tag, int hours, int start, int end) {
+    if (hours < 1 || hours > TREND_HOURS) {
+      throw new IllegalArgumentException("hours must be within 1.." + TREND_HOURS);
+    }
+    long now = System.currentTimeMillis() / 1000;
+    long hour = now - now % 3600;
+    List<String> keys = new ArrayList<>(hours + 6);
+    keys.add("trending:" + tag + hours + "h");
+    keys.add(trendBaseKey(tag, hours, hour));
+    keys.add(trendBaseKey(tag, hours, hour - 3600));
+    keys.add(trendKey(tag, hour));
+    keys.add(trendKey(tag, hour - 3600));
+    keys.add(trendKey(tag, hour - hours * 3600L));
+    for (int i = hours - 1; i >= 1; i--) {
+      keys.add(trendKey(tag, hour - i * 3600L));
+    }
+    List<String> args =
+        Arrays.asList(
+            String.valueOf(TREND_CACHE_SECONDS),
+            String.valueOf(2 * 3600),
+            String.valueOf(start),
+            String.valueOf(end));
+    List<Object> res =
+        RedisMetrics.time(
+            "getTrending", () -> (List<Object>) TRENDING_SCRIPT.eval(jedis, keys, args));
+    List<Map<String, String>> articles = new ArrayList<>(res.size() / 3);
+    for (int i = 0; i + 2 < res.size(); i += 3) {
+      List<String> fields = (List<String>) res.get(i + 2);
+      Map<String, String> article = new HashMap<>();
+      for (int j = 0; j + 1 < fields.size(); j += 2) {
+        article.put(fields.get(j), fields.get(j + 1));
+      }
+      article.put("articleId", (String) res.get(i));
+      article.put("trendScore", (String) res.get(i + 1));
+      articles.add(article);
+    }
+    return articles;
+  }
+
+  private static String trendKey(String tag, long hour) {
+    return "trend:" + tag + hour;
+  }
+
+  private static String trendBaseKey(String tag, int hours, long hour) {
+    return "trendBase:" + tag + hours + ":" + hour;
+  }
+
+  /**
+   * 根据分值获取文章 一次EVALSHA取回整页,开启页面缓存时可能不访问redis
+   *
+   * <p>开启页面缓存时返回的文章map是共享的,不要修改
    *
    * @param jedis
    * @param page
@@ -92,54 +378,135 @@ public class ArticleVote extends BaseClass {
    * @return
    */
   public static List<Map<String, String>> getArticles(Jedis jedis, int page, String order) {
+    return RedisMetrics.time("getArticles", () -> readArticles(jedis, page, order));
+  }
+
+  private static List<Map<String, String>> readArticles(Jedis jedis, int page, String order) {
+    NearCache<ArticlePage> cache = pageCache;
+    if (cache == null) {
+      return new ArrayList<>(loadPage(jedis, page, order, "").articles);
+    }
+    String cacheKey = order + ":" + page;
+    ArticlePage cached = cache.get(cacheKey);
+    long now = System.currentTimeMillis();
+    if (cached != null && now - cached.checkedAt < revalidateMillis) {
+      return new ArrayList<>(cached.articles);
+    }
+    ArticlePage loaded = loadPage(jedis, page, order, cached == null ? "" : cached.version);
+    ArticlePage fresh =
+        loaded.articles == null ? new ArticlePage(cached.version, cached.articles, now) : loaded;
+    cache.put(cacheKey, fresh, 60);
+    return new ArrayList<>(fresh.articles);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ArticlePage loadPage(Jedis jedis, int page, String order, String knownVersion) {
     int start = (page - 1) * ARTICLE_PRE_PAGE;
     int end = start + ARTICLE_PRE_PAGE - 1;
-    // 降序获取,article:articleId
-    Set<String> keys = jedis.zrevrange(order, start, end);
-    List<Map<String, String>> res = new ArrayList<>();
-    keys.forEach(
-        key -> {
-          Map<String, String> article = jedis.hgetAll(key);
-          article.put("articleId", key);
-          res.add(article);
-        });
-    return res;
+    List<String> keys = Arrays.asList(order, RANK_VERSION + order, PAGE_VERSION + order);
+    List<String> args =
+        Arrays.asList(
+            String.valueOf(start), String.valueOf(end), knownVersion, String.valueOf(page));
+    // 只读脚本,可以在副本上执行
+    ReplicaRouter router = replicaRouter;
+    List<Object> res =
+        (List<Object>)
+            (router == null
+                ? PAGE_SCRIPT.eval(jedis, keys, args)
+                : router.read(jedis, j -> PAGE_SCRIPT.eval(j, keys, args)));
+    String version = (String) res.get(0);
+    if (res.size() == 1 && version.equals(knownVersion)) {
+      // 版本没变,沿用本地页面
+      return new ArticlePage(version, null, System.currentTimeMillis());
+    }
+    // 降序,article:articleId
+    List<Map<String, String>> articles = new ArrayList<>();
+    for (int i = 1; i + 1 < res.size(); i += 2) {
+      List<String> fields = (List<String>) res.get(i + 1);
+      Map<String, String> article = new HashMap<>();
+      for (int j = 0; j + 1 < fields.size(); j += 2) {
+        article.put(fields.get(j), fields.get(j + 1));
+      }
+      article.put("articleId", (String) res.get(i));
+      articles.add(article);
+    }
+    return new ArticlePage(version, articles, System.currentTimeMillis());
   }
 
   /**
-   * 文章添加分组
+   * 文章添加分组 同时把文章当前的分数和发布时间写入分组排行articleScore:group/postTime:group
    *
    * @param jedis
    * @param articleId
    * @param groups
    */
   public static void addGroup(Jedis jedis, String articleId, String[] groups) {
-    String article = "article:" + articleId;
+    addGroup(jedis, "", articleId, groups);
+  }
+
+  static void addGroup(Jedis jedis, String tag, String articleId, String[] groups) {
+    if (groups.length == 0) {
+      return;
+    }
+    List<String> keys = new ArrayList<>(3 + groups.length * 5);
+    keys.addAll(
+        Arrays.asList("articleScore:" + tag, "postTime:" + tag, "articleGroups:" + tag + articleId));
     for (String group : groups) {
-      jedis.sadd("articleGroup:" + group, article);
+      keys.addAll(groupKeys(tag, group));
     }
+    List<String> args = new ArrayList<>(groups.length + 1);
+    args.add("article:" + tag + articleId);
+    args.addAll(Arrays.asList(groups));
+    RedisMetrics.time("addGroup", () -> GROUP_SCRIPT.eval(jedis, keys, args));
+    ARTICLE_GROUPS.invalidate(tag + articleId);
   }
 
   /**
-   * 获取分组文章 聚合zinterstore依据分值取交集
+   * 获取分组文章 分组排行随投票/发布/加组增量维护,直接范围读取
    *
    * @param jedis
    * @param group
    * @param page
-   * @param order
+   * @param order articleScore:或postTime:
    * @return
    */
   public static List<Map<String, String>> getGroupArticles(
       Jedis jedis, String group, int page, String order) {
+    return getArticles(jedis, page, order + group);
+  }
+
+  /**
+   * 为已有数据一次性重建分组排行 之后由addGroup/voteArticle/postArticle增量维护
+   *
+   * @param jedis
+   * @param group
+   */
+  public static void rebuildGroupRanking(Jedis jedis, String group) {
+    String members = "articleGroup:" + group;
     // 最大值取交集
-    String key = order + group;
-    if (!jedis.exists(key)) {
-      // 聚合最大值
-      ZParams zParams = new ZParams().aggregate(ZParams.Aggregate.MAX);
-      jedis.zinterstore(key, zParams, "group:" + group, order);
-      jedis.expire(key, 60);
+    ZParams zParams = new ZParams().aggregate(ZParams.Aggregate.MAX);
+    jedis.zinterstore("articleScore:" + group, zParams, members, "articleScore:");
+    jedis.zinterstore("postTime:" + group, zParams, members, "postTime:");
+    Pipeline pipeline = jedis.pipelined();
+    for (String article : jedis.smembers(members)) {
+      pipeline.sadd("articleGroups:" + article.substring("article:".length()), group);
+    }
+    pipeline.incr(RANK_VERSION + "articleScore:" + group);
+    pipeline.incr(RANK_VERSION + "postTime:" + group);
+    pipeline.sync();
+  }
+
+  /** 缓存的一页文章及其排行版本号 */
+  public static final class ArticlePage {
+    private final String version;
+    private final List<Map<String, String>> articles;
+    private final long checkedAt;
+
+    private ArticlePage(String version, List<Map<String, String>> articles, long checkedAt) {
+      this.version = version;
+      this.articles = articles;
+      this.checkedAt = checkedAt;
     }
-    return getArticles(jedis, page, order);
   }
 
   private static void showArticles(List<Map<String, String>> articles) {
@@ -149,25 +516,23 @@ public class ArticleVote extends BaseClass {
   }
 
   public static void run() {
-    JedisPool jedisPool = null;
     Jedis jedis = null;
     try {
-      jedisPool = JedisUtis.getJedisPool();
-      jedis = getJedis(jedisPool);
+      jedis = getJedis(JedisUtis.getJedisPool());
       jedis.select(15);
+      loadScripts(jedis);
       String articleId = postArticle(jedis, "username", "A title", "http://www.google.com");
       System.out.println("We posted a new article with id: " + articleId);
       System.out.println("Its HASH looks like:");
       Map<String, String> articleData = jedis.hgetAll("article:" + articleId);
       articleData.forEach((k, v) -> System.out.println("key:" + k + "," + "value:" + v));
       System.out.println();
-      voteArticle(jedis, "other_user", articleId, true);
-      String votes = jedis.hget("article" + articleId, "voted");
-      System.out.println("We voted for the article, it now has votes: " + votes);
+      VoteResult voted = voteArticle(jedis, "1001", articleId, true);
+      System.out.println("We voted for the article, it now has votes: " + voted.getVotes());
 
-      voteArticle(jedis, "other_user_devoted", articleId, false);
-      String devotes = jedis.hget("article:" + articleId, "devoted");
-      System.out.println("We devoted for the article, it now has devotes: " + devotes);
+      VoteResult devoted = voteArticle(jedis, "1002", articleId, false);
+      System.out.println(
+          "We devoted for the article, it now has devotes: " + devoted.getDevotes());
 
       System.out.println();
 
@@ -175,6 +540,9 @@ public class ArticleVote extends BaseClass {
       List<Map<String, String>> articles = getArticles(jedis, 1, "articleScore:");
       showArticles(articles);
 
+      System.out.println("Trending over the last 24 hours:");
+      showArticles(getTrending(jedis, 24, 1));
+
       addGroup(jedis, articleId, new String[] {"new-group"});
       System.out.println("We added the article to a new group, other articles include:");
       articles = getGroupArticles(jedis, "new-group", 1, "articleScore:");
@@ -182,12 +550,12 @@ public class ArticleVote extends BaseClass {
     } catch (Exception e) {
       throw new RuntimeException(e);
     } finally {
-      jedis.close();
-    jedisPool.close();
+      closeJedis(jedis);
     }
   }
 
   public static void main(String[] args) {
+    RedisPools.warmUp(RedisPools.REQUEST);
     run();
   }
 }
@@ -0,0 +1,35 @@
+package com.pure.redis.easycase.vote;
+
+import com.pure.redis.util.AsyncRedis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/** ArticleVote的异步接口 */
+public class AsyncArticleVote {
+  private final AsyncRedis redis;
+
+  public AsyncArticleVote(AsyncRedis redis) {
+    this.redis = redis;
+  }
+
+  public CompletableFuture<VoteResult> voteArticle(
+      String userId, String articleId, boolean isVoted) {
+    return redis.call(jedis -> ArticleVote.voteArticle(jedis, userId, articleId, isVoted));
+  }
+
+  public CompletableFuture<String> postArticle(
+      String user, String title, String link, String[] groups) {
+    return redis.call(jedis -> ArticleVote.postArticle(jedis, user, title, link, groups));
+  }
+
+  public CompletableFuture<List<Map<String, String>>> getArticles(int page, String order) {
+    return redis.call(jedis -> ArticleVote.getArticles(jedis, page, order));
+  }
+
+  public CompletableFuture<List<Map<String, String>>> getGroupArticles(
+      String group, int page, String order) {
+    return redis.call(jedis -> ArticleVote.getGroupArticles(jedis, group, page, order));
+  }
+}
@@ -0,0 +1,181 @@
+package com.pure.redis.easycase.vote;
+
+import com.pure.redis.util.ShardRouter;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolAbstract;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Tuple;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文章分片到多个节点 每个分区有自己的article:{a分区}计数器和排行,文章id对分区数取模即为所在分区
+ *
+ * <p>投票/加组只访问一个分区;取排行时从每个分区取前N名合并,再按节点批量读取文章
+ */
+public class ShardedArticles {
+  private final ShardRouter router;
+  private final AtomicInteger nextPartition = new AtomicInteger();
+
+  public ShardedArticles(ShardRouter router) {
+    this.router = router;
+  }
+
+  static String tag(int partition) {
+    return "{a" + partition + "}";
+  }
+
+  public int partition(String articleId) {
+    return (int) (Long.parseLong(articleId) % router.partitions());
+  }
+
+  /**
+   * 发布文章 分区轮流选取
+   *
+   * @param user
+   * @param title
+   * @param link
+   * @param groups
+   * @return
+   */
+  public String postArticle(String user, String title, String link, String[] groups) {
+    int partition = Math.floorMod(nextPartition.getAndIncrement(), router.partitions());
+    try (Jedis jedis = router.node(partition).getResource()) {
+      return ArticleVote.postArticle(
+          jedis, tag(partition), router.partitions(), partition, user, title, link, groups);
+    }
+  }
+
+  public VoteResult voteArticle(String userId, String articleId, Boolean isVoted) {
+    int partition = partition(articleId);
+    try (Jedis jedis = router.node(partition).getResource()) {
+      return ArticleVote.voteArticle(jedis, tag(partition), userId, articleId, isVoted);
+    }
+  }
+
+  public long uniqueVoters(String articleId) {
+    int partition = partition(articleId);
+    try (Jedis jedis = router.node(partition).getResource()) {
+      return ArticleVote.uniqueVoters(jedis, tag(partition), articleId);
+    }
+  }
+
+  public void addGroup(String articleId, String[] groups) {
+    int partition = partition(articleId);
+    try (Jedis jedis = router.node(partition).getResource()) {
+      ArticleVote.addGroup(jedis, tag(partition), articleId, groups);
+    }
+  }
+
+  /**
+   * 根据分值获取文章 每个分区取前page*每页条数名,合并后截取一页
+   *
+   * @param page
+   * @param order articleScore:或postTime:
+   * @return
+   */
+  public List<Map<String, String>> getArticles(int page, String order) {
+    return getRanked(page, order, "");
+  }
+
+  public List<Map<String, String>> getGroupArticles(String group, int page, String order) {
+    return getRanked(page, order, group);
+  }
+
+  /**
+   * 最近几小时的热门文章 每个分区各自维护小时桶和缓存,取各分区前N名按得分合并
+   *
+   * @param hours
+   * @param page
+   * @return
+   */
+  public List<Map<String, String>> getTrending(int hours, int page) {
+    int start = (page - 1) * ArticleVote.ARTICLE_PRE_PAGE;
+    int end = start + ArticleVote.ARTICLE_PRE_PAGE - 1;
+    List<Map<String, String>> merged = new ArrayList<>();
+    for (int p = 0; p < router.partitions(); p++) {
+      try (Jedis jedis = router.node(p).getResource()) {
+        merged.addAll(ArticleVote.getTrending(jedis, tag(p), hours, 0, end));
+      }
+    }
+    merged.sort(
+        Comparator.comparingDouble(
+                (Map<String, String> a) -> Double.parseDouble(a.get("trendScore")))
+            .reversed());
+    if (start >= merged.size()) {
+      return new ArrayList<>();
+    }
+    return new ArrayList<>(merged.subList(start, Math.min(end + 1, merged.size())));
+  }
+
+  private List<Map<String, String>> getRanked(int page, String order, String group) {
+    int start = (page - 1) * ArticleVote.ARTICLE_PRE_PAGE;
+    int end = start + ArticleVote.ARTICLE_PRE_PAGE - 1;
+    // 每个节点一次往返取回它负责的所有分区的前end+1名
+    Map<JedisPoolAbstract, List<Integer>> byNode = partitionsByNode();
+    List<Tuple> merged = new ArrayList<>();
+    for (Map.Entry<JedisPoolAbstract, List<Integer>> entry : byNode.entrySet()) {
+      List<Response<Set<Tuple>>> responses = new ArrayList<>();
+      try (Jedis jedis = entry.getKey().getResource()) {
+        Pipeline pipeline = jedis.pipelined();
+        for (int partition : entry.getValue()) {
+          responses.add(pipeline.zrevrangeWithScores(order + tag(partition) + group, 0, end));
+        }
+        pipeline.sync();
+      }
+      responses.forEach(r -> merged.addAll(r.get()));
+    }
+    merged.sort(Comparator.comparingDouble(Tuple::getScore).reversed());
+    if (start >= merged.size()) {
+      return new ArrayList<>();
+    }
+    List<Tuple> pageTuples = merged.subList(start, Math.min(end + 1, merged.size()));
+    return hydrate(pageTuples);
+  }
+
+  /** 按节点批量HGETALL,保持排行顺序 */
+  private List<Map<String, String>> hydrate(List<Tuple> tuples) {
+    Map<JedisPoolAbstract, Pipeline> pipelines = new IdentityHashMap<>();
+    Map<JedisPoolAbstract, Jedis> connections = new IdentityHashMap<>();
+    List<Response<Map<String, String>>> responses = new ArrayList<>(tuples.size());
+    try {
+      for (Tuple tuple : tuples) {
+        // article:{a分区}id
+        String member = tuple.getElement();
+        String articleId = member.substring(member.indexOf('}') + 1);
+        JedisPoolAbstract node = router.node(partition(articleId));
+        Pipeline pipeline =
+            pipelines.computeIfAbsent(
+                node,
+                n -> connections.computeIfAbsent(n, JedisPoolAbstract::getResource).pipelined());
+        responses.add(pipeline.hgetAll(member));
+      }
+      pipelines.values().forEach(Pipeline::sync);
+    } finally {
+      connections.values().forEach(Jedis::close);
+    }
+    List<Map<String, String>> articles = new ArrayList<>(tuples.size());
+    for (int i = 0; i < tuples.size(); i++) {
+      Map<String, String> article = new HashMap<>(responses.get(i).get());
+      article.put("articleId", tuples.get(i).getElement());
+      articles.add(article);
+    }
+    return articles;
+  }
+
+  private Map<JedisPoolAbstract, List<Integer>> partitionsByNode() {
+    Map<JedisPoolAbstract, List<Integer>> byNode = new IdentityHashMap<>();
+    for (int p = 0; p < router.partitions(); p++) {
+      byNode.computeIfAbsent(router.node(p), n -> new ArrayList<>()).add(p);
+    }
+    return byNode;
+  }
+}
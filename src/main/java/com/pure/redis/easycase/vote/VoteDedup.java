@@ -0,0 +1,96 @@
+package com.pure.redis.easycase.vote;
+
+import com.pure.redis.util.RedisConfig;
+import com.pure.redis.util.RedisPools;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 投票去重方式 默认每篇文章voted:/devoted:两个用户id集合,每个投票用户几十字节;
+ * 位图方式以数字用户id为偏移SETBIT到votedBits:/devotedBits:,每个用户约1位
+ *
+ * <p>位图按最大用户id分配内存,只适合id连续的数字用户,非数字或超过maxBitmapUserId的id退回集合,
+ * 一个很大的id不会让位图分配到几百MB;可选再记一份voters:HyperLogLog做去重投票人数统计。
+ * 方式在发布时记入article:<id>的dedup字段,投票按文章自己的方式去重,切换只影响之后发布的文章
+ */
+public class VoteDedup {
+  /** 默认的位图用户id上限,每个位图最大16MB */
+  public static final long DEFAULT_MAX_BITMAP_USER_ID = 1L << 27;
+
+  public static final VoteDedup SETS = new VoteDedup(false, false);
+
+  private final boolean bitmap;
+  private final boolean hyperLogLog;
+  private final long maxBitmapUserId;
+
+  /**
+   * @param bitmap 是否使用位图
+   * @param hyperLogLog 是否额外记录voters:HyperLogLog
+   */
+  public VoteDedup(boolean bitmap, boolean hyperLogLog) {
+    this(bitmap, hyperLogLog, DEFAULT_MAX_BITMAP_USER_ID);
+  }
+
+  /**
+   * @param bitmap 是否使用位图
+   * @param hyperLogLog 是否额外记录voters:HyperLogLog
+   * @param maxBitmapUserId 位图允许的最大用户id,更大的id退回集合
+   */
+  public VoteDedup(boolean bitmap, boolean hyperLogLog, long maxBitmapUserId) {
+    this.bitmap = bitmap;
+    this.hyperLogLog = hyperLogLog;
+    this.maxBitmapUserId = maxBitmapUserId;
+  }
+
+  /**
+   * 读redis.vote.dedup(set/bitmap,默认set),redis.vote.hyperLogLog(默认false)
+   * 和redis.vote.maxBitmapUserId(默认2^27)
+   */
+  public static VoteDedup fromConfig() {
+    RedisConfig config = RedisPools.getConfig();
+    return new VoteDedup(
+        "bitmap".equalsIgnoreCase(config.getString("vote.dedup", "set")),
+        Boolean.parseBoolean(config.getString("vote.hyperLogLog", "false")),
+        Long.parseLong(
+            config.getString("vote.maxBitmapUserId", String.valueOf(DEFAULT_MAX_BITMAP_USER_ID))));
+  }
+
+  public boolean isBitmap() {
+    return bitmap;
+  }
+
+  public boolean isHyperLogLog() {
+    return hyperLogLog;
+  }
+
+  public long getMaxBitmapUserId() {
+    return maxBitmapUserId;
+  }
+
+  String mode() {
+    return bitmap ? "bitmap" : "set";
+  }
+
+  /**
+   * 投票脚本用到的四个去重key,脚本按文章的dedup字段和用户id选用集合或位图
+   *
+   * @param up 赞成票
+   * @param tag 分区hash tag
+   * @param articleId
+   * @return 本次投票的集合,相反的集合,本次投票的位图,相反的位图
+   */
+  static List<String> keys(boolean up, String tag, String articleId) {
+    String voted = "voted:" + tag + articleId;
+    String devoted = "devoted:" + tag + articleId;
+    String votedBits = "votedBits:" + tag + articleId;
+    String devotedBits = "devotedBits:" + tag + articleId;
+    return up
+        ? Arrays.asList(voted, devoted, votedBits, devotedBits)
+        : Arrays.asList(devoted, voted, devotedBits, votedBits);
+  }
+
+  static String votersKey(String tag, String articleId) {
+    return "voters:" + tag + articleId;
+  }
+}
@@ -0,0 +1,15 @@
+package com.pure.redis.easycase.vote;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** 投票后的最新分数和票数,调用方无需再读一次 */
+@Getter
+@ToString
+@AllArgsConstructor
+public class VoteResult {
+  private final double score;
+  private final long votes;
+  private final long devotes;
+}
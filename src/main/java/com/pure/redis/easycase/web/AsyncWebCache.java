@@ -0,0 +1,74 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.AsyncRedis;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/** WebCache的异步接口 调用线程不阻塞在redis往返上 */
+public class AsyncWebCache {
+  private final WebCache webCache;
+  private final AsyncRedis redis;
+
+  public AsyncWebCache(WebCache webCache, AsyncRedis redis) {
+    this.webCache = webCache;
+    this.redis = redis;
+  }
+
+  public CompletableFuture<String> checkToken(String token) {
+    return redis.call(jedis -> webCache.checkToken(jedis, token));
+  }
+
+  public CompletableFuture<Void> updateToken(String token, String user, String product) {
+    return redis.call(
+        jedis -> {
+          webCache.updateToken(jedis, token, user, product);
+          return null;
+        });
+  }
+
+  public CompletableFuture<Void> updateTokens(List<TokenHit> hits) {
+    return redis.call(
+        jedis -> {
+          webCache.updateTokens(jedis, hits);
+          return null;
+        });
+  }
+
+  public CompletableFuture<Void> addCart(String session, String product, int count) {
+    return redis.call(
+        jedis -> {
+          webCache.addCart(jedis, session, product, count);
+          return null;
+        });
+  }
+
+  public CompletableFuture<Void> updateCart(String session, Map<String, Integer> items) {
+    return redis.call(
+        jedis -> {
+          webCache.updateCart(jedis, session, items);
+          return null;
+        });
+  }
+
+  public CompletableFuture<Map<String, String>> updateCartAndGet(
+      String session, Map<String, Integer> items) {
+    return redis.call(jedis -> webCache.updateCartAndGet(jedis, session, items));
+  }
+
+  public CompletableFuture<Map<String, String>> mergeCart(String fromSession, String toSession) {
+    return redis.call(jedis -> webCache.mergeCart(jedis, fromSession, toSession));
+  }
+
+  /**
+   * 缓存页面请求 callback在执行器线程上运行
+   *
+   * @param callback
+   * @param request
+   * @return
+   */
+  public CompletableFuture<String> cacheRequest(Callback callback, String request) {
+    return redis.call(jedis -> webCache.cacheRequest(jedis, callback, request));
+  }
+}
@@ -1,56 +1,261 @@
 package com.pure.redis.easycase.web;
 
-import com.google.gson.Gson;
+import com.pure.redis.util.Codec;
+import com.pure.redis.util.LuaScript;
+import com.pure.redis.util.MaintenanceJob;
+import com.pure.redis.util.RedisMetrics;
+import com.pure.redis.util.Wakeup;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.Tuple;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
 
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
-public class CacheRows extends Thread {
+/**
+ * 数据行缓存调度 每次用脚本原子领取一批到期行,行数据交给worker池并发加载,结果pipeline批量写回
+ *
+ * <p>领取时已经重新排期,多个CacheRows线程或进程同时运行不会重复刷新同一行
+ *
+ * <p>没有到期行时睡到下一个排期时间;设置了Wakeup的话scheduleRowCache新排期会立即唤醒,否则每50ms检查一次
+ *
+ * <p>既可以作为独立线程start,也可以交给MaintenanceRuntime托管,这时构造参数jedis传null,每轮从池里借连接;
+ * 领取是原子的,托管时可以多并发
+ */
+public class CacheRows extends Thread implements MaintenanceJob {
+    private static final LuaScript CLAIM_SCRIPT = LuaScript.fromResource("lua/claim_rows.lua");
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final int DEFAULT_WORKERS = 4;
+    /** 行数据超过多少字节压缩 */
+    private static final int DEFAULT_COMPRESS_THRESHOLD = 256;
+    /** scheduleRowCache排期后通知的频道 */
+    public static final String WAKEUP_CHANNEL = "wakeup:schedule";
+    /** 没有Wakeup时的轮询间隔 */
+    private static final long POLL_MILLIS = 50;
+    /** 有Wakeup时最长的空闲等待,兜底错过的通知 */
+    private static final long IDLE_MILLIS = 60_000;
+
+    private final Codec<Inventory> codec;
+    private final int batchSize;
+    private final ExecutorService workers;
     private Jedis jedis;
-    private boolean quit;
+    private volatile boolean quit;
+    private volatile Wakeup wakeup;
+    /** 下一个排期时间,没有排期时为Long.MAX_VALUE */
+    private volatile long nextDueMillis = Long.MAX_VALUE;
+
+    /** 已写回的行数,加载失败、行不存在或写入失败的不计 */
+    private final AtomicLong refreshed = new AtomicLong();
+    /** 最近一批里最早到期行的调度延迟 */
+    private volatile long lastLagMillis;
+    /** 调度延迟最大值 */
+    private final AtomicLong maxLagMillis = new AtomicLong();
 
     public CacheRows(Jedis jedis){
+        this(jedis, DEFAULT_BATCH_SIZE, DEFAULT_WORKERS);
+    }
+
+    /**
+     * @param jedis
+     * @param batchSize 每次最多领取的行数
+     * @param workers 并发加载行数据的线程数
+     */
+    public CacheRows(Jedis jedis, int batchSize, int workers){
+        this(jedis, batchSize, workers, InventoryCodec.binary(DEFAULT_COMPRESS_THRESHOLD));
+    }
+
+    /**
+     * @param jedis
+     * @param batchSize 每次最多领取的行数
+     * @param workers 并发加载行数据的线程数
+     * @param codec inv:写入的编码
+     */
+    public CacheRows(Jedis jedis, int batchSize, int workers, Codec<Inventory> codec){
+        this.codec = codec;
         this.jedis = jedis;
-        this.jedis.select(14);
+        this.batchSize = batchSize;
+        this.workers = Executors.newFixedThreadPool(workers);
     }
 
     public void quit(){
         this.quit =true;
+        Wakeup current = wakeup;
+        if (current != null) {
+            current.signal();
+        }
+    }
+
+    /**
+     * 空闲时等待新排期的信号,线程退出时关闭
+     *
+     * @param wakeup 通常是Wakeup.subscribe(pool, WAKEUP_CHANNEL)
+     */
+    public void setWakeup(Wakeup wakeup) {
+        this.wakeup = wakeup;
+    }
+
+    /** 不启动线程直接调用refreshBatch时,用完要关闭worker池 */
+    void shutdownWorkers() {
+        workers.shutdown();
+    }
+
+    @Override
+    public int runOnce(Jedis jedis) {
+        return refreshBatch(jedis);
+    }
+
+    /** 本批领满了立即继续,否则等到下一个排期时间,有Wakeup时新排期会提前唤醒 */
+    @Override
+    public long nextDelayMillis(int processed) {
+        if (processed >= batchSize) {
+            return 0;
+        }
+        long untilDue = nextDueMillis - System.currentTimeMillis();
+        if (wakeup == null) {
+            return Math.max(Math.min(untilDue, POLL_MILLIS), 1);
+        }
+        return Math.max(Math.min(untilDue, IDLE_MILLIS), 0);
+    }
+
+    @Override
+    public Wakeup wakeup() {
+        return wakeup;
+    }
+
+    @Override
+    public void close() {
+        shutdownWorkers();
+        Wakeup current = wakeup;
+        if (current != null) {
+            current.close();
+        }
     }
 
+    public long getRefreshed() {
+        return refreshed.get();
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
 
     @Override
     public void run() {
-        while (!quit){
-            Gson gson = new Gson();
+        try {
             while (!quit){
-                //获取需要缓存的数据行
-                Set<Tuple> range = jedis.zrangeWithScores("schedule:", 0, 0);
-                Tuple next = range.size() > 0 ? range.iterator().next() : null;
-                long now = System.currentTimeMillis() / 1000;
-                if (next == null || next.getScore() > now){
-                    try {
-                        Thread.sleep(50);
-                    }catch(InterruptedException ie){
-                        Thread.currentThread().interrupt();
-                    }
-                    continue;
-                }
-
-                String rowId = next.getElement();
-                double delay = jedis.zscore("delay:", rowId);
+                //领取一批需要缓存的数据行
+                int claimed = RedisMetrics.time("cacheRows", this::refreshBatch);
+                long delay = nextDelayMillis(claimed);
                 if (delay <= 0) {
-                    jedis.zrem("delay:", rowId);
-                    jedis.zrem("schedule:", rowId);
-                    jedis.del("inv:" + rowId);
                     continue;
                 }
+                Wakeup current = wakeup;
+                try {
+                    if (current == null) {
+                        Thread.sleep(delay);
+                    } else {
+                        current.await(delay);
+                    }
+                }catch(InterruptedException ie){
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } finally {
+            close();
+        }
+    }
+
+    int refreshBatch() {
+        return refreshBatch(jedis);
+    }
 
+    /**
+     * 领取并刷新一批到期行
+     *
+     * @param jedis
+     * @return 本批领取的行数,不足batchSize说明暂时没有更多到期行
+     */
+    @SuppressWarnings("unchecked")
+    int refreshBatch(Jedis jedis) {
+        long nowMillis = System.currentTimeMillis();
+        long now = nowMillis / 1000;
+        List<Object> res = (List<Object>) CLAIM_SCRIPT.eval(jedis,
+                Arrays.asList("schedule:", "delay:"),
+                Arrays.asList(String.valueOf(now), String.valueOf(batchSize)));
+        List<String> rowIds = (List<String>) res.get(0);
+        List<String> scores = (List<String>) res.get(1);
+        List<String> removed = (List<String>) res.get(2);
+        Object next = res.size() > 3 ? res.get(3) : null;
+        nextDueMillis = next == null
+                ? Long.MAX_VALUE : (long) (Double.parseDouble((String) next) * 1000);
+        if (rowIds.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        recordLag(nowMillis, scores);
+
+        List<Future<byte[]>> loads = new ArrayList<>(rowIds.size());
+        for (String rowId : rowIds) {
+            loads.add(workers.submit(() -> {
                 Inventory row = Inventory.get(rowId);
-                jedis.zadd("schedule:", now + delay, rowId);
-                jedis.set("inv:" + rowId, gson.toJson(row));
+                return row == null ? null : codec.encode(row);
+            }));
+        }
+        Pipeline pipeline = jedis.pipelined();
+        for (String rowId : removed) {
+            pipeline.del("inv:" + rowId);
+        }
+        List<Response<String>> writes = new ArrayList<>(rowIds.size());
+        for (int i = 0; i < rowIds.size(); i++) {
+            byte[] row;
+            try {
+                row = loads.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                //加载失败的行等下次排期再刷新
+                continue;
             }
+            if (row != null) {
+                writes.add(pipeline.set(("inv:" + rowIds.get(i)).getBytes(StandardCharsets.UTF_8), row));
+            }
+        }
+        pipeline.sync();
+        //只统计确实写回的行
+        long written = 0;
+        for (Response<String> write : writes) {
+            try {
+                write.get();
+                written++;
+            } catch (JedisDataException e) {
+                //写入失败的行等下次排期再刷新
+            }
+        }
+        refreshed.addAndGet(written);
+        return rowIds.size() + removed.size();
+    }
+
+    private void recordLag(long nowMillis, List<String> scores) {
+        if (scores.isEmpty()) {
+            return;
         }
+        //ZRANGEBYSCORE按分值升序,第一个就是最早到期的
+        double earliest = Double.parseDouble(scores.get(0));
+        long lag = Math.max(nowMillis - (long) (earliest * 1000), 0);
+        lastLagMillis = lag;
+        maxLagMillis.accumulateAndGet(lag, Math::max);
     }
 }
@@ -1,23 +1,160 @@
 package com.pure.redis.easycase.web;
 
+import com.pure.redis.util.MaintenanceJob;
+import com.pure.redis.util.RedisMetrics;
+import com.pure.redis.util.Wakeup;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 清理超出上限的会话 recent:里最早的token连同viewed:,login:(以及可选的cart:)一起删除
+ *
+ * <p>每批大小随recent:超出上限的数量自适应增减,删除走一个pipeline,可选UNLINK在后台释放内存
+ *
+ * <p>没有超出上限时每秒检查一次;设置了Wakeup的话空闲时一直等到updateToken写入新会话的通知
+ *
+ * <p>也可以交给MaintenanceRuntime托管,这时构造参数jedis传null,每轮从池里借连接;批大小是实例状态,并发度用1,
+ * 分片时每个分区一个任务
+ */
+public class CleanSession extends Thread implements MaintenanceJob {
+    private static final int MIN_BATCH = 100;
+    private static final int MAX_BATCH = 10000;
+    /** 没有Wakeup时的检查间隔 */
+    private static final long POLL_MILLIS = 1000;
+    /** 有Wakeup时最长的空闲等待,兜底错过的通知 */
+    private static final long IDLE_MILLIS = 60_000;
 
-public class CleanSession extends Thread {
     private Jedis jedis;
     private Integer limit;
-    private boolean quit;
+    private volatile boolean quit;
+    private volatile Wakeup wakeup;
+    /** 同时删除购物车 */
+    private final boolean cleanCart;
+    /** 用UNLINK代替DEL */
+    private final boolean unlink;
+    /** key布局和负责清理的分区 */
+    private final SessionKeys keys;
+    private final int partition;
+    private int batchSize = MIN_BATCH;
+
+    private final AtomicLong evicted = new AtomicLong();
+    private volatile long backlog;
+    private volatile double evictionRate;
+    private long rateWindowStart = System.nanoTime();
+    private long rateWindowEvicted;
 
     public CleanSession(int limit,Jedis jedis){
+        this(limit, jedis, false, false);
+    }
+
+    /**
+     * @param limit 保留的会话数
+     * @param jedis
+     * @param cleanCart 是否同时删除cart:token
+     * @param unlink 是否用UNLINK非阻塞删除
+     */
+    public CleanSession(int limit, Jedis jedis, boolean cleanCart, boolean unlink){
+        this(limit, jedis, cleanCart, unlink, SessionKeys.DEFAULT, 0);
+    }
+
+    /**
+     * 分片部署时每个分区一个清理线程,连接要连到该分区所在节点
+     *
+     * @param limit 该分区保留的会话数
+     * @param jedis
+     * @param cleanCart 是否同时删除cart:token
+     * @param unlink 是否用UNLINK非阻塞删除
+     * @param keys key布局
+     * @param partition 负责的分区
+     */
+    public CleanSession(int limit, Jedis jedis, boolean cleanCart, boolean unlink,
+                        SessionKeys keys, int partition){
         this.jedis = jedis;
-        this.jedis.select(14);
         this.limit = limit;
+        this.cleanCart = cleanCart;
+        this.unlink = unlink;
+        this.keys = keys;
+        this.partition = partition;
     }
 
     public void quit(){
         this.quit =true;
+        Wakeup current = wakeup;
+        if (current != null) {
+            current.signal();
+        }
+    }
+
+    /**
+     * updateToken写入新会话时通知的频道,每个recent:一个
+     *
+     * @param keys key布局
+     * @param partition 分区
+     * @return
+     */
+    public static String wakeupChannel(SessionKeys keys, int partition) {
+        return "wakeup:" + keys.recent(partition);
+    }
+
+    /**
+     * 空闲时等待新会话的信号,线程退出时关闭
+     *
+     * @param wakeup 通常是Wakeup.subscribe(pool, wakeupChannel(keys, partition))
+     */
+    public void setWakeup(Wakeup wakeup) {
+        this.wakeup = wakeup;
+    }
+
+    @Override
+    public int runOnce(Jedis jedis) {
+        return sweepOnce(jedis);
+    }
+
+    /** 还有积压立即继续,否则等下一次检查或者新会话的通知 */
+    @Override
+    public long nextDelayMillis(int processed) {
+        if (processed > 0) {
+            return 0;
+        }
+        return wakeup == null ? POLL_MILLIS : IDLE_MILLIS;
+    }
+
+    @Override
+    public Wakeup wakeup() {
+        return wakeup;
+    }
+
+    @Override
+    public void close() {
+        Wakeup current = wakeup;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /** 已清理的会话总数 */
+    public long getEvicted() {
+        return evicted.get();
+    }
+
+    /** 最近一次检查时recent:超出上限的数量 */
+    public long getBacklog() {
+        return backlog;
+    }
+
+    /** 每秒清理的会话数 */
+    public double getEvictionRate() {
+        return evictionRate;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
     }
 
     /**
@@ -26,30 +163,112 @@ public class CleanSession extends Thread {
      */
     @Override
     public void run() {
-        while (!quit){
-            Long size = jedis.zcard("recent:");
-            if (size <= limit){
+        try {
+            while (!quit){
+                long delay = nextDelayMillis(RedisMetrics.time("cleanSession", this::sweepOnce));
+                if (delay <= 0) {
+                    continue;
+                }
+                Wakeup current = wakeup;
                 try {
-                    Thread.sleep(1000L);
+                    if (current == null) {
+                        Thread.sleep(delay);
+                    } else {
+                        current.await(delay);
+                    }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
+                    return;
                 }
-                continue;
             }
+        } finally {
+            close();
+        }
+    }
+
+    int sweepOnce() {
+        return sweepOnce(jedis);
+    }
 
-            long endIndex = Math.min(size - limit,100);
-            //按时间排序的token
-            Set<String> tokenSet = jedis.zrange("recent:", 0, endIndex - 1);
-            String[] tokens = tokenSet.toArray(new String[tokenSet.size()]);
+    /**
+     * 清理一批
+     *
+     * @param jedis
+     * @return 本批清理的会话数
+     */
+    int sweepOnce(Jedis jedis) {
+        Pipeline pipeline = jedis.pipelined();
+        String recent = keys.recent(partition);
+        Response<Long> size = pipeline.zcard(recent);
+        //按时间排序的token
+        Response<Set<String>> head = pipeline.zrange(recent, 0, batchSize - 1);
+        pipeline.sync();
+
+        long overflow = size.get() - limit;
+        backlog = Math.max(overflow, 0);
+        if (overflow <= 0) {
+            batchSize = MIN_BATCH;
+            updateRate(0);
+            return 0;
+        }
+        int count = (int) Math.min(overflow, head.get().size());
+        List<String> tokenList = new ArrayList<>(head.get()).subList(0, count);
+        String[] tokens = tokenList.toArray(new String[0]);
 
-            ArrayList<String> sessionKeys = new ArrayList<>();
+        List<String> sessionKeys = new ArrayList<>(cleanCart ? count * 2 : count);
+        for (String token : tokens) {
+            if (!keys.isCompact()) {
+                sessionKeys.add(keys.viewed(partition, token));
+            }
+            if (cleanCart) {
+                sessionKeys.add(keys.cart(partition, token));
+            }
+        }
+        pipeline = jedis.pipelined();
+        if (!sessionKeys.isEmpty()) {
+            String[] doomed = sessionKeys.toArray(new String[0]);
+            if (unlink) {
+                pipeline.unlink(doomed);
+            } else {
+                pipeline.del(doomed);
+            }
+        }
+        if (keys.isCompact()) {
+            //紧凑布局:用户和最近浏览都是桶里的字段
             for (String token : tokens) {
-                sessionKeys.add("viewed:" + token);
+                pipeline.hdel(keys.session(partition, keys.bucket(token)),
+                        token, token + SessionKeys.VIEWS_SUFFIX);
             }
+        } else {
+            pipeline.hdel(keys.login(partition), tokens);
+        }
+        pipeline.zrem(recent, tokens);
+        pipeline.sync();
+
+        adjustBatch(overflow - count);
+        evicted.addAndGet(count);
+        backlog = overflow - count;
+        updateRate(count);
+        return count;
+    }
+
+    /** 积压多就翻倍,积压少就减半 */
+    private void adjustBatch(long remaining) {
+        if (remaining >= batchSize) {
+            batchSize = Math.min(batchSize * 2, MAX_BATCH);
+        } else if (remaining < batchSize / 4) {
+            batchSize = Math.max(batchSize / 2, MIN_BATCH);
+        }
+    }
 
-            jedis.del(sessionKeys.toArray(new String[sessionKeys.size()]));
-            jedis.hdel("login:", tokens);
-            jedis.zrem("recent:", tokens);
+    private void updateRate(int count) {
+        rateWindowEvicted += count;
+        long now = System.nanoTime();
+        long elapsed = now - rateWindowStart;
+        if (elapsed >= 1_000_000_000L) {
+            evictionRate = rateWindowEvicted * 1e9 / elapsed;
+            rateWindowStart = now;
+            rateWindowEvicted = 0;
         }
     }
 }
@@ -0,0 +1,92 @@
+package com.pure.redis.easycase.web;
+
+import com.google.gson.Gson;
+import com.pure.redis.util.Codec;
+import com.pure.redis.util.TextCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/** 对比JSON和二进制编码的值大小与编解码吞吐,不需要redis */
+public class CodecReport {
+  private static final int ROWS = 100000;
+  private static final int PAGES = 2000;
+
+  public static void main(String[] args) {
+    List<Inventory> rows = new ArrayList<>(ROWS);
+    StringBuilder data = new StringBuilder();
+    for (int i = 0; i < ROWS; i++) {
+      data.setLength(0);
+      // 行数据长度从几十到几百字节不等
+      for (int j = 0; j <= i % 8; j++) {
+        data.append("sku-").append(i).append(" stock=").append(j * 17).append(" warehouse=east;");
+      }
+      rows.add(new Inventory("item" + i, data.toString(), 1600000000L + i));
+    }
+    System.out.println("----- rows (" + ROWS + ") -----");
+    Gson gson = new Gson();
+    report(
+        "gson json (old)",
+        rows,
+        new Codec<Inventory>() {
+          @Override
+          public byte[] encode(Inventory value) {
+            return gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+          }
+
+          @Override
+          public Inventory decode(byte[] bytes) {
+            return gson.fromJson(new String(bytes, StandardCharsets.UTF_8), Inventory.class);
+          }
+        });
+    report("binary", rows, InventoryCodec.binary(0));
+    report("binary+deflate>=256", rows, InventoryCodec.binary(256));
+
+    List<String> pages = new ArrayList<>(PAGES);
+    for (int i = 0; i < PAGES; i++) {
+      StringBuilder page = new StringBuilder("<html><body><ul>");
+      for (int j = 0; j < 100; j++) {
+        page.append("<li class=\"item\"><a href=\"/?prod=")
+            .append(UUID.randomUUID())
+            .append("\">product ")
+            .append(j)
+            .append("</a></li>");
+      }
+      pages.add(page.append("</ul></body></html>").toString());
+    }
+    System.out.println("----- pages (" + PAGES + ") -----");
+    report("raw utf-8 (old)", pages, new TextCodec(0));
+    report("utf-8+deflate>=1024", pages, new TextCodec(1024));
+  }
+
+  private static <T> void report(String name, List<T> values, Codec<T> codec) {
+    // 预热
+    for (int round = 0; round < 3; round++) {
+      for (T value : values) {
+        codec.decode(codec.encode(value));
+      }
+    }
+    long bytes = 0;
+    List<byte[]> encoded = new ArrayList<>(values.size());
+    long start = System.nanoTime();
+    for (T value : values) {
+      byte[] b = codec.encode(value);
+      bytes += b.length;
+      encoded.add(b);
+    }
+    long encodeNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    for (byte[] b : encoded) {
+      codec.decode(b);
+    }
+    long decodeNanos = System.nanoTime() - start;
+    System.out.printf(
+        "%-22s avg %6.1f bytes  encode %,10d/s  decode %,10d/s%n",
+        name,
+        (double) bytes / values.size(),
+        values.size() * 1_000_000_000L / encodeNanos,
+        values.size() * 1_000_000_000L / decodeNanos);
+  }
+}
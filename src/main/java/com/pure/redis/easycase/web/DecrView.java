@@ -1,30 +1,87 @@
 package com.pure.redis.easycase.web;
 
-import lombok.SneakyThrows;
+import com.pure.redis.util.LuaScript;
+import com.pure.redis.util.MaintenanceJob;
+import com.pure.redis.util.RedisMetrics;
 import redis.clients.jedis.Jedis;
-import redis.clients.jedis.ZParams;
 
-public class DecrView extends Thread {
+import java.util.Arrays;
+
+/**
+ * viewed:的维护 配合ViewDecay的惰性衰减,只在纪元切换时整体重写一次,平时只裁剪到前20000名
+ *
+ * <p>多个DecrView同时运行时由viewed:epoch保证每个纪元只归一化一次;写入浏览量的add_views.lua也按viewed:epoch
+ * 在纪元切换后先归一化,DecrView停掉时排行照常衰减,只是不再裁剪
+ *
+ * <p>也可以交给MaintenanceRuntime托管,这时构造参数jedis传null,每轮从池里借连接,并发度用1
+ */
+public class DecrView extends Thread implements MaintenanceJob {
+  private static final LuaScript DECAY_SCRIPT = LuaScript.fromResource("lua/decay_viewed.lua");
+  /** 保留的商品数 */
+  private static final int KEEP = 20000;
+  /** 裁剪间隔 */
+  private static final long TRIM_MILLIS = 10_000L;
+
   private Jedis jedis;
-  private boolean quit;
+  private volatile boolean quit;
+  private final ViewDecay decay;
 
   public DecrView(Jedis jedis) {
+    this(jedis, ViewDecay.fromConfig());
+  }
+
+  public DecrView(Jedis jedis, ViewDecay decay) {
       this.jedis = jedis;
-      this.jedis.select(14);
+      this.decay = decay;
   }
 
   public void quit() {
     this.quit = true;
   }
 
-  @SneakyThrows
   @Override
   public void run() {
     while (!quit) {
-        jedis.zremrangeByRank("viewed:",0,-20001);
-        ZParams zParams = new ZParams().weights(0.5).aggregate(ZParams.Aggregate.MAX);
-        jedis.zinterstore("viewed:",zParams,"viewed:");
-        Thread.sleep(300L);
+      RedisMetrics.time("decrView", () -> maintain(jedis, System.currentTimeMillis() / 1000));
+      try {
+        Thread.sleep(nextDelayMillis(0));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
     }
   }
+
+  @Override
+  public int runOnce(Jedis jedis) {
+    return maintain(jedis, System.currentTimeMillis() / 1000) ? 1 : 0;
+  }
+
+  /** 睡到下次裁剪或者纪元切换,取较早的 */
+  @Override
+  public long nextDelayMillis(int processed) {
+    long now = System.currentTimeMillis();
+    long nextEpoch = (decay.epochStart(now / 1000) + decay.getEpochSeconds()) * 1000;
+    return Math.max(Math.min(TRIM_MILLIS, nextEpoch - now), 1);
+  }
+
+  /**
+   * 必要时归一化,并裁剪viewed:
+   *
+   * @param jedis
+   * @param nowSeconds
+   * @return 本次是否做了归一化
+   */
+  boolean maintain(Jedis jedis, long nowSeconds) {
+    Object renormalized =
+        DECAY_SCRIPT.eval(
+            jedis,
+            Arrays.asList("viewed:", "viewed:epoch"),
+            Arrays.asList(
+                String.valueOf(decay.epochStart(nowSeconds)),
+                String.valueOf(decay.getEpochSeconds()),
+                String.valueOf(decay.renormalizeFactor(1)),
+                String.valueOf(KEEP)));
+    return Long.valueOf(1).equals(renormalized);
+  }
 }
@@ -1,5 +1,10 @@
 package com.pure.redis.easycase.web;
 
+import lombok.Getter;
+import lombok.ToString;
+
+@Getter
+@ToString
 public class Inventory {
     private String id;
     private String data;
@@ -11,6 +16,12 @@ public class Inventory {
         this.time = System.currentTimeMillis() / 1000;
     }
 
+    Inventory(String id, String data, long time) {
+        this.id = id;
+        this.data = data;
+        this.time = time;
+    }
+
     public static Inventory get(String id) {
         return new Inventory(id);
     }
@@ -0,0 +1,121 @@
+package com.pure.redis.easycase.web;
+
+import com.google.gson.Gson;
+import com.pure.redis.util.Codec;
+import com.pure.redis.util.CodecFrames;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 数据行编解码 binary:格式头+紧凑二进制,可选Deflate;json:旧的Gson格式
+ *
+ * <p>两种模式都能读对方写的值,灰度期间新旧值可以同时存在
+ */
+public class InventoryCodec implements Codec<Inventory> {
+    /** 二进制行格式版本 */
+    private static final int ROW_VERSION = 1;
+
+    private final Gson gson = new Gson();
+    private final boolean binary;
+    private final int compressThreshold;
+
+    private InventoryCodec(boolean binary, int compressThreshold) {
+        this.binary = binary;
+        this.compressThreshold = compressThreshold;
+    }
+
+    /** @param compressThreshold 超过多少字节压缩,<=0不压缩 */
+    public static InventoryCodec binary(int compressThreshold) {
+        return new InventoryCodec(true, compressThreshold);
+    }
+
+    public static InventoryCodec json() {
+        return new InventoryCodec(false, 0);
+    }
+
+    @Override
+    public byte[] encode(Inventory row) {
+        if (!binary) {
+            return gson.toJson(row).getBytes(StandardCharsets.UTF_8);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(ROW_VERSION);
+            writeString(out, row.getId());
+            writeString(out, row.getData());
+            writeVarLong(out, row.getTime());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return CodecFrames.wrap(CodecFrames.FORMAT_ROW, bytes.toByteArray(), compressThreshold);
+    }
+
+    @Override
+    public Inventory decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (!CodecFrames.isFramed(bytes)) {
+            return gson.fromJson(new String(bytes, StandardCharsets.UTF_8), Inventory.class);
+        }
+        if (CodecFrames.format(bytes) != CodecFrames.FORMAT_ROW) {
+            throw new IllegalArgumentException("not a row value: format " + CodecFrames.format(bytes));
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(CodecFrames.payload(bytes)))) {
+            int version = in.readUnsignedByte();
+            if (version != ROW_VERSION) {
+                throw new IllegalArgumentException("unknown row version " + version);
+            }
+            return new Inventory(readString(in), readString(in), readVarLong(in));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("corrupt row value", e);
+        }
+    }
+
+    /** 变长长度前缀,0表示null,否则为字节数+1 */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, utf8.length + 1L);
+        out.write(utf8);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        long len = readVarLong(in) - 1;
+        if (len < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[(int) len];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    /** 每字节7位,最高位表示后面还有 */
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return v;
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
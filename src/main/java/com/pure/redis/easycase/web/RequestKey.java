@@ -0,0 +1,175 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.Murmur3;
+
+/**
+ * 请求解析和页面缓存key 一次扫描记录参数位置,不为每个参数创建对象
+ *
+ * <p>缓存key由scheme、host(忽略大小写)、path和按参数名排好的参数计算MurmurHash3 128位,
+ * 参数顺序不同的同一请求得到同一个key;同名参数保持原来的先后,先后不同时getParam取到的值不同,key也不同
+ */
+public final class RequestKey {
+  private final String request;
+  private final int hostStart;
+  private final int pathEnd;
+  /** 每个参数占3个int:起始位置,'='位置(没有为-1),结束位置 */
+  private final int[] params;
+  private final int paramCount;
+
+  private RequestKey(String request, int hostStart, int pathEnd, int[] params, int paramCount) {
+    this.request = request;
+    this.hostStart = hostStart;
+    this.pathEnd = pathEnd;
+    this.params = params;
+    this.paramCount = paramCount;
+  }
+
+  /**
+   * 解析请求url
+   *
+   * @param request
+   * @return 不是scheme://...形式时返回null
+   */
+  public static RequestKey parse(String request) {
+    if (request == null) {
+      return null;
+    }
+    int schemeEnd = request.indexOf("://");
+    if (schemeEnd <= 0 || !isScheme(request, schemeEnd)) {
+      return null;
+    }
+    int hostStart = schemeEnd + 3;
+    int end = request.indexOf('#', hostStart);
+    if (end < 0) {
+      end = request.length();
+    }
+    int query = request.indexOf('?', hostStart);
+    if (query < 0 || query > end) {
+      return new RequestKey(request, hostStart, end, null, 0);
+    }
+    // 先数'&'确定数组大小,再记录每个参数的位置
+    int segments = 1;
+    for (int i = query + 1; i < end; i++) {
+      if (request.charAt(i) == '&') {
+        segments++;
+      }
+    }
+    int[] params = new int[segments * 3];
+    int count = 0;
+    int start = query + 1;
+    int eq = -1;
+    for (int i = start; i <= end; i++) {
+      char c = i < end ? request.charAt(i) : '&';
+      if (c == '=' && eq < 0) {
+        eq = i;
+      } else if (c == '&') {
+        if (i > start) {
+          params[count * 3] = start;
+          params[count * 3 + 1] = eq;
+          params[count * 3 + 2] = i;
+          count++;
+        }
+        start = i + 1;
+        eq = -1;
+      }
+    }
+    return new RequestKey(request, hostStart, query, params, count);
+  }
+
+  /**
+   * 取参数值,同名参数取最后一个
+   *
+   * @param name
+   * @return 参数不存在或没有'='时返回null
+   */
+  public String getParam(String name) {
+    int found = find(name);
+    if (found < 0 || params[found * 3 + 1] < 0) {
+      return null;
+    }
+    return request.substring(params[found * 3 + 1] + 1, params[found * 3 + 2]);
+  }
+
+  public boolean hasParam(String name) {
+    return find(name) >= 0;
+  }
+
+  /** 128位缓存key,32个十六进制字符 */
+  public String cacheKey() {
+    Murmur3 hash = new Murmur3();
+    for (int i = 0; i < hostStart; i++) {
+      hash.putChar(Character.toLowerCase(request.charAt(i)));
+    }
+    int host = request.indexOf('/', hostStart);
+    int hostEnd = host < 0 || host > pathEnd ? pathEnd : host;
+    for (int i = hostStart; i < hostEnd; i++) {
+      hash.putChar(Character.toLowerCase(request.charAt(i)));
+    }
+    hash.putChars(request, hostEnd, pathEnd);
+    if (paramCount > 0) {
+      int[] order = sortedParams();
+      for (int i = 0; i < paramCount; i++) {
+        hash.putChar(i == 0 ? '?' : '&');
+        int p = order[i] * 3;
+        hash.putChars(request, params[p], params[p + 2]);
+      }
+    }
+    return hash.toHex();
+  }
+
+  private int find(String name) {
+    for (int i = paramCount - 1; i >= 0; i--) {
+      int start = params[i * 3];
+      int keyEnd = nameEnd(i);
+      if (keyEnd - start == name.length() && request.regionMatches(start, name, 0, name.length())) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** 参数个数很少,插入排序;只按参数名排,稳定排序保留同名参数的先后,与getParam取最后一个一致 */
+  private int[] sortedParams() {
+    int[] order = new int[paramCount];
+    for (int i = 0; i < paramCount; i++) {
+      int j = i;
+      while (j > 0 && compareNames(order[j - 1], i) > 0) {
+        order[j] = order[j - 1];
+        j--;
+      }
+      order[j] = i;
+    }
+    return order;
+  }
+
+  private int compareNames(int a, int b) {
+    int i = params[a * 3];
+    int aEnd = nameEnd(a);
+    int j = params[b * 3];
+    int bEnd = nameEnd(b);
+    while (i < aEnd && j < bEnd) {
+      int diff = request.charAt(i++) - request.charAt(j++);
+      if (diff != 0) {
+        return diff;
+      }
+    }
+    return (aEnd - i) - (bEnd - j);
+  }
+
+  private int nameEnd(int param) {
+    return params[param * 3 + 1] < 0 ? params[param * 3 + 2] : params[param * 3 + 1];
+  }
+
+  private static boolean isScheme(String s, int end) {
+    if (!Character.isLetter(s.charAt(0))) {
+      return false;
+    }
+    for (int i = 1; i < end; i++) {
+      char c = s.charAt(i);
+      if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,116 @@
+package com.pure.redis.easycase.web;
+
+/**
+ * 会话相关key的命名
+ *
+ * <p>默认布局与原来一致:login:,recent:,viewed:token,cart:token;
+ * 分片布局按token分成若干分区,每个分区的key都带hash tag {s分区号},同一分区的会话数据落在同一个slot/节点,
+ * login:和recent:这两个全局结构也随之拆成每个分区一份
+ *
+ * <p>紧凑布局把token再分到许多小桶session:b桶号,字段token存用户,字段token:v存最近浏览(换行分隔,最新在前),
+ * 小hash保持listpack编码,省掉每个会话一个大hash字段和一个zset的开销。
+ * 最近浏览的值通常超过64字节,要把服务端hash-max-listpack-value(旧版本hash-max-ziplist-value)调到1024
+ */
+public class SessionKeys {
+  public static final SessionKeys DEFAULT = new SessionKeys(1, false, 0);
+  /** 紧凑布局下每个会话在桶里的最近浏览字段后缀 */
+  public static final String VIEWS_SUFFIX = ":v";
+
+  private final int partitions;
+  private final boolean tagged;
+  private final int buckets;
+
+  private SessionKeys(int partitions, boolean tagged, int buckets) {
+    this.partitions = partitions;
+    this.tagged = tagged;
+    this.buckets = buckets;
+  }
+
+  /**
+   * 分片布局
+   *
+   * @param partitions 分区数,部署后不能修改
+   * @return
+   */
+  public static SessionKeys sharded(int partitions) {
+    if (partitions <= 0) {
+      throw new IllegalArgumentException("partitions must be positive");
+    }
+    return new SessionKeys(partitions, true, 0);
+  }
+
+  /**
+   * 在当前布局上改用紧凑的桶存储 每个会话占桶里2个字段,每个分区的桶数按会话数/50估算,
+   * 桶内字段数不超过hash-max-listpack-entries(默认128)
+   *
+   * @param buckets 每个分区的桶数,部署后不能修改
+   * @return
+   */
+  public SessionKeys compact(int buckets) {
+    if (buckets <= 0) {
+      throw new IllegalArgumentException("buckets must be positive");
+    }
+    return new SessionKeys(partitions, tagged, buckets);
+  }
+
+  public boolean isCompact() {
+    return buckets > 0;
+  }
+
+  public int partitions() {
+    return partitions;
+  }
+
+  public int partition(String token) {
+    if (partitions == 1) {
+      return 0;
+    }
+    return Math.floorMod(mix(token.hashCode(), 0x85ebca6b), partitions);
+  }
+
+  /** 紧凑布局下token所在的桶,与分区用不同的混合常数,分区内的桶也是均匀的 */
+  public int bucket(String token) {
+    if (buckets <= 1) {
+      return 0;
+    }
+    return Math.floorMod(mix(token.hashCode(), 0xc2b2ae35), buckets);
+  }
+
+  /** 打散hashCode的低位 */
+  private static int mix(int h, int multiplier) {
+    h ^= h >>> 16;
+    h *= multiplier;
+    h ^= h >>> 13;
+    return h;
+  }
+
+  public String login(int partition) {
+    return tagged ? "login:" + tag(partition) : "login:";
+  }
+
+  public String recent(int partition) {
+    return tagged ? "recent:" + tag(partition) : "recent:";
+  }
+
+  public String viewed(int partition, String token) {
+    return tagged ? "viewed:" + tag(partition) + ":" + token : "viewed:" + token;
+  }
+
+  /** 紧凑布局的会话桶 */
+  public String session(int partition, int bucket) {
+    return tagged ? "session:" + tag(partition) + ":b" + bucket : "session:b" + bucket;
+  }
+
+  public String cart(int partition, String token) {
+    return tagged ? "cart:" + tag(partition) + ":" + token : "cart:" + token;
+  }
+
+  /** 跨节点合并购物车的标记,放在目标会话的分区 */
+  public String cartMerge(int partition, String fromToken) {
+    return tagged ? "cartMerge:" + tag(partition) + ":" + fromToken : "cartMerge:" + fromToken;
+  }
+
+  private static String tag(int partition) {
+    return "{s" + partition + "}";
+  }
+}
@@ -0,0 +1,122 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.RedisPools;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 对比默认布局和紧凑布局下每个会话占用的内存 写入N个会话,每个浏览25个商品,用INFO memory的增量计算
+ *
+ * <p>参数:[会话数,默认20000] [数据库,默认13];数据库必须为空,结束后删除写入的key
+ */
+public class SessionMemoryReport {
+  private static final int PRODUCTS = 1000;
+  private static final int VIEWS_PER_SESSION = 25;
+  private static final int BATCH = 500;
+
+  public static void main(String[] args) {
+    int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+    int database = args.length > 1 ? Integer.parseInt(args[1]) : 13;
+    try (Jedis jedis = RedisPools.request().getResource()) {
+      jedis.select(database);
+      if (jedis.dbSize() > 0) {
+        System.out.println("database " + database + " is not empty, aborting");
+        return;
+      }
+      WebCache.loadScripts(jedis);
+      int entries = listpackLimit(jedis, "entries", 128);
+      int value = listpackLimit(jedis, "value", 64);
+      System.out.println("hash-max-listpack-entries=" + entries + " value=" + value);
+      if (value < 1024) {
+        System.out.println(
+            "warning: recent views exceed " + value + " bytes, buckets will use hashtable");
+      }
+      // 桶内字段(每会话2个)留两成余量
+      int buckets = Math.max(1, (int) Math.ceil(sessions * 2 / (entries * 0.8)));
+      try {
+        // 全局viewed:两种布局一样,先建好不计入
+        Pipeline pipeline = jedis.pipelined();
+        for (int i = 0; i < PRODUCTS; i++) {
+          pipeline.zadd("viewed:", 0, "item" + i);
+        }
+        pipeline.sync();
+        List<String> tokens = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+          tokens.add(UUID.randomUUID().toString());
+        }
+        SessionKeys compact = SessionKeys.DEFAULT.compact(buckets);
+        report(jedis, "default", SessionKeys.DEFAULT, tokens, false);
+        report(jedis, "compact(" + buckets + " buckets)", compact, tokens, true);
+        System.out.println("sample bucket encoding: " + jedis.objectEncoding(compact.session(0, 0)));
+        cleanup(jedis, compact, tokens);
+      } finally {
+        jedis.del("viewed:");
+      }
+    }
+  }
+
+  private static void report(
+      Jedis jedis, String name, SessionKeys keys, List<String> tokens, boolean keep) {
+    WebCache webCache = new WebCache();
+    webCache.setSessionKeys(keys);
+    long before = usedMemory(jedis);
+    for (int view = 0; view < VIEWS_PER_SESSION; view++) {
+      List<TokenHit> hits = new ArrayList<>(BATCH);
+      for (int i = 0; i < tokens.size(); i++) {
+        hits.add(new TokenHit(tokens.get(i), "user" + i, "item" + ((i + view * 7) % PRODUCTS)));
+        if (hits.size() == BATCH) {
+          webCache.updateTokens(jedis, hits);
+          hits = new ArrayList<>(BATCH);
+        }
+      }
+      webCache.updateTokens(jedis, hits);
+    }
+    long after = usedMemory(jedis);
+    System.out.printf(
+        "%-28s sessions=%d keys=%d bytes/session=%.1f%n",
+        name,
+        tokens.size(),
+        jedis.dbSize() - 1,
+        (double) (after - before) / tokens.size());
+    if (!keep) {
+      cleanup(jedis, keys, tokens);
+    }
+  }
+
+  private static void cleanup(Jedis jedis, SessionKeys keys, List<String> tokens) {
+    Pipeline pipeline = jedis.pipelined();
+    for (String token : tokens) {
+      int partition = keys.partition(token);
+      pipeline.del(
+          keys.isCompact()
+              ? keys.session(partition, keys.bucket(token))
+              : keys.viewed(partition, token));
+    }
+    pipeline.del(keys.login(0), keys.recent(0));
+    pipeline.sync();
+  }
+
+  private static long usedMemory(Jedis jedis) {
+    for (String line : jedis.info("memory").split("\r\n")) {
+      if (line.startsWith("used_memory:")) {
+        return Long.parseLong(line.substring("used_memory:".length()));
+      }
+    }
+    throw new IllegalStateException("used_memory not reported");
+  }
+
+  /** Redis 7叫listpack,旧版本叫ziplist */
+  private static int listpackLimit(Jedis jedis, String kind, int def) {
+    for (String encoding : new String[] {"listpack", "ziplist"}) {
+      List<String> config = jedis.configGet("hash-max-" + encoding + "-" + kind);
+      if (config.size() == 2) {
+        return Integer.parseInt(config.get(1));
+      }
+    }
+    return def;
+  }
+}
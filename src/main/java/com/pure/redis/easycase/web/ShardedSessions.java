@@ -0,0 +1,171 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.LuaScript;
+import com.pure.redis.util.MaintenanceRuntime;
+import com.pure.redis.util.ShardRouter;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolAbstract;
+import redis.clients.jedis.Pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会话数据分片到多个节点 login:/recent:/viewed:token/cart:token按token分区,每个节点各自承担一部分写入
+ *
+ * <p>全局的viewed:浏览量排行不分区,放在router.nodeForKey("viewed:")节点上
+ */
+public class ShardedSessions {
+  private final WebCache webCache;
+  private final ShardRouter router;
+  private final SessionKeys keys;
+
+  public ShardedSessions(ShardRouter router) {
+    this(router, 0);
+  }
+
+  /**
+   * 使用自己的WebCache,分片key布局不影响调用方已有的WebCache
+   *
+   * @param router
+   * @param buckets 大于0时使用紧凑布局,为每个分区的桶数
+   */
+  public ShardedSessions(ShardRouter router, int buckets) {
+    this.webCache = new WebCache();
+    this.router = router;
+    SessionKeys sharded = SessionKeys.sharded(router.partitions());
+    this.keys = buckets > 0 ? sharded.compact(buckets) : sharded;
+    webCache.setSessionKeys(keys);
+  }
+
+  public String checkToken(String token) {
+    try (Jedis jedis = node(token).getResource()) {
+      return webCache.checkToken(jedis, token);
+    }
+  }
+
+  public void updateToken(String token, String user, String product) {
+    updateTokens(Collections.singletonList(new TokenHit(token, user, product)));
+  }
+
+  /**
+   * 批量更新会话 按节点分组,每个节点一次往返,浏览量排行再一次往返
+   *
+   * @param hits
+   */
+  public void updateTokens(List<TokenHit> hits) {
+    if (hits.isEmpty()) {
+      return;
+    }
+    long timestamp = System.currentTimeMillis() / 1000;
+    Map<JedisPoolAbstract, List<TokenHit>> byNode = new IdentityHashMap<>();
+    for (TokenHit hit : hits) {
+      byNode.computeIfAbsent(node(hit.getToken()), n -> new ArrayList<>()).add(hit);
+    }
+    for (Map.Entry<JedisPoolAbstract, List<TokenHit>> entry : byNode.entrySet()) {
+      try (Jedis jedis = entry.getKey().getResource()) {
+        Pipeline pipeline = jedis.pipelined();
+        LuaScript.Batch sessions = webCache.writeSessions(pipeline, entry.getValue(), timestamp);
+        pipeline.sync();
+        sessions.resendNoScript(jedis);
+      }
+    }
+    try (Jedis jedis = router.nodeForKey("viewed:").getResource()) {
+      Pipeline pipeline = jedis.pipelined();
+      LuaScript.Batch views = webCache.writeViews(pipeline, hits, timestamp);
+      pipeline.sync();
+      views.resendNoScript(jedis);
+    }
+  }
+
+  public void addCart(String session, String product, int count) {
+    try (Jedis jedis = node(session).getResource()) {
+      webCache.addCart(jedis, session, product, count);
+    }
+  }
+
+  public void updateCart(String session, Map<String, Integer> items) {
+    try (Jedis jedis = node(session).getResource()) {
+      webCache.updateCart(jedis, session, items);
+    }
+  }
+
+  public Map<String, String> updateCartAndGet(String session, Map<String, Integer> items) {
+    try (Jedis jedis = node(session).getResource()) {
+      return webCache.updateCartAndGet(jedis, session, items);
+    }
+  }
+
+  /**
+   * 合并购物车 两个会话在同一节点时一次往返;否则读出源购物车,累加到目标节点成功后才删除源购物车
+   *
+   * <p>累加时在目标节点写合并标记,删除源购物车失败后重试不会重复累加;源购物车删除后再清掉标记
+   *
+   * @param fromSession 匿名会话
+   * @param toSession 登录后的会话
+   * @return 合并后的购物车
+   */
+  public Map<String, String> mergeCart(String fromSession, String toSession) {
+    JedisPoolAbstract from = node(fromSession);
+    JedisPoolAbstract to = node(toSession);
+    if (from == to) {
+      try (Jedis jedis = to.getResource()) {
+        return webCache.mergeCart(jedis, fromSession, toSession);
+      }
+    }
+    String source = webCache.cartKey(fromSession);
+    Map<String, String> items;
+    try (Jedis jedis = from.getResource()) {
+      items = jedis.hgetAll(source);
+    }
+    if (items.isEmpty()) {
+      try (Jedis jedis = to.getResource()) {
+        return webCache.updateCartAndGet(jedis, toSession, Collections.emptyMap());
+      }
+    }
+    Map<String, String> merged;
+    try (Jedis jedis = to.getResource()) {
+      merged = webCache.addToCart(jedis, fromSession, toSession, items);
+    }
+    try (Jedis jedis = from.getResource()) {
+      jedis.del(source);
+    }
+    try (Jedis jedis = to.getResource()) {
+      webCache.clearCartMerge(jedis, fromSession, toSession);
+    }
+    return merged;
+  }
+
+  /**
+   * 每个分区一个清理任务交给runtime托管,每轮从分区所在节点的池借连接,不长期占用连接
+   *
+   * @param runtime
+   * @param limitPerPartition 每个分区保留的会话数
+   * @param cleanCart 是否同时删除购物车
+   */
+  public void startSweepers(MaintenanceRuntime runtime, int limitPerPartition, boolean cleanCart) {
+    for (int p = 0; p < keys.partitions(); p++) {
+      runtime.start(
+          "cleanSession-" + p,
+          new CleanSession(limitPerPartition, null, cleanCart, true, keys, p),
+          1,
+          router.node(p));
+    }
+  }
+
+  public SessionKeys getKeys() {
+    return keys;
+  }
+
+  /** 分片使用的WebCache,可以在上面设置浏览量衰减等选项,不要改它的SessionKeys */
+  public WebCache getWebCache() {
+    return webCache;
+  }
+
+  private JedisPoolAbstract node(String token) {
+    return router.node(keys.partition(token));
+  }
+}
@@ -0,0 +1,13 @@
+package com.pure.redis.easycase.web;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/** 一次页面访问:token,用户,浏览的商品(可为空) */
+@Getter
+@AllArgsConstructor
+public class TokenHit {
+  private final String token;
+  private final String user;
+  private final String product;
+}
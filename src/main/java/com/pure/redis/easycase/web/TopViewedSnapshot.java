@@ -0,0 +1,96 @@
+package com.pure.redis.easycase.web;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolAbstract;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 浏览量前N商品的本地快照 后台定期从viewed:重建,canCache直接查本地集合,不再每次zrank
+ *
+ * <p>快照超过maxStaleMillis没有刷新成功(比如redis不可用)时isFresh返回false,调用方应回退到zrank
+ */
+@Slf4j
+public class TopViewedSnapshot implements AutoCloseable {
+  private final JedisPoolAbstract pool;
+  private final int topN;
+  private final long refreshMillis;
+  private final long maxStaleMillis;
+  private final ScheduledExecutorService scheduler;
+
+  private volatile Set<String> members = Collections.emptySet();
+  private volatile long refreshedAt;
+
+  /**
+   * @param pool 后台刷新用的连接池
+   * @param topN 快照包含的商品数
+   * @param refreshMillis 刷新间隔,即正常情况下的最大过期时间
+   * @param maxStaleMillis 超过这个时间没刷新成功就不再使用快照
+   */
+  public TopViewedSnapshot(
+      JedisPoolAbstract pool, int topN, long refreshMillis, long maxStaleMillis) {
+    this.pool = pool;
+    this.topN = topN;
+    this.refreshMillis = refreshMillis;
+    this.maxStaleMillis = maxStaleMillis;
+    this.scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread t = new Thread(r, "top-viewed-snapshot");
+              t.setDaemon(true);
+              return t;
+            });
+  }
+
+  /** 先同步加载一次,再开始定期刷新 */
+  public TopViewedSnapshot start() {
+    refresh();
+    scheduler.scheduleWithFixedDelay(
+        this::refreshQuietly, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
+  public boolean contains(String product) {
+    return members.contains(product);
+  }
+
+  public boolean isFresh() {
+    return System.currentTimeMillis() - refreshedAt <= maxStaleMillis;
+  }
+
+  public int size() {
+    return members.size();
+  }
+
+  public long getRefreshedAt() {
+    return refreshedAt;
+  }
+
+  /** 浏览量用zincrby -1累计,分值越小越热门,取前topN名 */
+  public void refresh() {
+    try (Jedis jedis = pool.getResource()) {
+      Set<String> top = jedis.zrange("viewed:", 0, topN - 1);
+      members = Collections.unmodifiableSet(new HashSet<>(top));
+      refreshedAt = System.currentTimeMillis();
+    }
+  }
+
+  private void refreshQuietly() {
+    try {
+      refresh();
+    } catch (RuntimeException e) {
+      log.warn("refresh top viewed snapshot failed", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    scheduler.shutdownNow();
+  }
+}
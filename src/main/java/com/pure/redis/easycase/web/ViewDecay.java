@@ -0,0 +1,54 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.RedisConfig;
+import com.pure.redis.util.RedisPools;
+
+/**
+ * 浏览量的惰性指数衰减 不再定期把整个viewed:乘0.5,而是让新的浏览按时间放大:
+ * 距已生效纪元起点t秒的一次浏览计 2^(t/halfLife),效果等同于所有旧分数按半衰期衰减
+ *
+ * <p>已生效的纪元记在viewed:epoch,每进入一个纪元(epochSeconds)把viewed:整体乘
+ * 2^(-epochSeconds/halfLife) 归一化一次,避免分数无限增大。权重由add_views.lua在redis里按viewed:epoch计算,
+ * 写入时发现进入新纪元就先归一化,不依赖DecrView按时运行;时钟有偏差的节点只会让权重差一点,不会写入未归一化的大权重
+ */
+public class ViewDecay {
+  private final long halfLifeSeconds;
+  private final long epochSeconds;
+
+  /**
+   * @param halfLifeSeconds 半衰期
+   * @param epochSeconds 归一化周期,epochSeconds/halfLifeSeconds不要超过40,避免double精度不够
+   */
+  public ViewDecay(long halfLifeSeconds, long epochSeconds) {
+    if (halfLifeSeconds <= 0 || epochSeconds <= 0 || epochSeconds / halfLifeSeconds > 40) {
+      throw new IllegalArgumentException("invalid decay: " + halfLifeSeconds + "/" + epochSeconds);
+    }
+    this.halfLifeSeconds = halfLifeSeconds;
+    this.epochSeconds = epochSeconds;
+  }
+
+  /** 读redis.viewed.halfLifeSeconds/redis.viewed.epochSeconds,默认半衰期1小时,每天归一化 */
+  public static ViewDecay fromConfig() {
+    RedisConfig config = RedisPools.getConfig();
+    return new ViewDecay(
+        config.getInt("viewed.halfLifeSeconds", 3600), config.getInt("viewed.epochSeconds", 86400));
+  }
+
+  /** 当前纪元的起始时间 */
+  public long epochStart(long nowSeconds) {
+    return nowSeconds - Math.floorMod(nowSeconds, epochSeconds);
+  }
+
+  /** 跨过n个纪元时旧分数要乘的系数 */
+  public double renormalizeFactor(long epochs) {
+    return Math.pow(2, -(double) (epochs * epochSeconds) / halfLifeSeconds);
+  }
+
+  public long getEpochSeconds() {
+    return epochSeconds;
+  }
+
+  public long getHalfLifeSeconds() {
+    return halfLifeSeconds;
+  }
+}
@@ -1,20 +1,174 @@
 package com.pure.redis.easycase.web;
 
 import com.pure.redis.basic.BaseClass;
+import com.pure.redis.util.Codec;
 import com.pure.redis.util.JedisUtis;
+import com.pure.redis.util.LuaScript;
+import com.pure.redis.util.NearCache;
+import com.pure.redis.util.RedisLease;
+import com.pure.redis.util.RedisMetrics;
+import com.pure.redis.util.RedisPools;
+import com.pure.redis.util.ReplicaRouter;
+import com.pure.redis.util.SingleFlight;
+import com.pure.redis.util.TextCodec;
+import com.pure.redis.util.Wakeup;
 import org.apache.commons.lang3.StringUtils;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.Tuple;
 
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /** 令牌cookie,信息存在redis */
 public class WebCache extends BaseClass {
+  /** 页面缓存有效期 */
+  private static final int PAGE_TTL_SECONDS = 300;
+  /** 浏览量前多少名的商品页面可以缓存 */
+  public static final int TOP_VIEWED = 10000;
+  /** 重新生成页面的跨进程租约时长 */
+  private static final long LEASE_MILLIS = 5000;
+  /** 没拿到租约时轮询新页面的间隔 */
+  private static final long LEASE_POLL_MILLIS = 20;
+  /** 每个会话保留的最近浏览数 */
+  private static final int RECENT_VIEWS = 25;
+  /** 紧凑布局下更新会话的脚本 */
+  private static final LuaScript COMPACT_SESSION =
+      LuaScript.fromResource("lua/compact_session.lua");
+  /** 批量更新并返回购物车的脚本 */
+  private static final LuaScript UPDATE_CART = LuaScript.fromResource("lua/update_cart.lua");
+  /** 合并购物车的脚本 */
+  private static final LuaScript MERGE_CART = LuaScript.fromResource("lua/merge_cart.lua");
+  /** 合并别的节点上购物车的脚本 */
+  private static final LuaScript MERGE_REMOTE_CART =
+      LuaScript.fromResource("lua/merge_remote_cart.lua");
+  private static final LuaScript ADD_VIEWS = LuaScript.fromResource("lua/add_views.lua");
+  /** 跨节点合并标记的过期秒数,只需覆盖合并后删除源购物车之前的重试 */
+  private static final int CART_MERGE_MARKER_SECONDS = 3600;
+  /** 同一个recent:最多每隔多少毫秒通知一次清理线程,0不通知 */
+  private static final long SESSION_SIGNAL_MILLIS =
+      RedisPools.getConfig().getInt("wakeup.sessionSignalMillis", 1000);
+
+  /** 可选的进程内页面缓存,为null时每次都读redis */
+  private final NearCache<String> nearCache;
+  /** 过期后仍可返回旧页面的秒数,0表示关闭stale-while-revalidate */
+  private final int staleSeconds;
+  /** 同一页面并发未命中只回源一次 */
+  private final SingleFlight<String> pageLoads = new SingleFlight<>();
+  /** 页面编码,超过1KB压缩 */
+  private volatile Codec<String> pageCodec = new TextCodec(1024);
+  /** 会话key布局 */
+  private volatile SessionKeys sessionKeys = SessionKeys.DEFAULT;
+  /** 浏览量衰减,新浏览按时间放大权重 */
+  private volatile ViewDecay viewDecay = ViewDecay.fromConfig();
+  /** 可选的热门商品本地快照,为null时canCache每次zrank */
+  private volatile TopViewedSnapshot topViewed;
+  /** 可选的读副本路由,为null时所有读走调用方的连接 */
+  private volatile ReplicaRouter replicaRouter;
+  /** 每个清理频道上次通知的时间 */
+  private final Map<String, Long> sessionSignals = new ConcurrentHashMap<>();
+
+  public WebCache() {
+    this(null);
+  }
+
+  public WebCache(NearCache<String> nearCache) {
+    this(nearCache, 0);
+  }
+
+  /**
+   * @param nearCache 进程内页面缓存,可为null
+   * @param staleSeconds 页面过期后继续返回旧副本的秒数,刷新期间不阻塞其他请求
+   */
+  public WebCache(NearCache<String> nearCache, int staleSeconds) {
+    this.nearCache = nearCache;
+    this.staleSeconds = Math.max(staleSeconds, 0);
+  }
+
+  public NearCache<String> getNearCache() {
+    return nearCache;
+  }
+
+  /**
+   * 设置页面编码 解码需兼容旧的未编码页面
+   *
+   * @param pageCodec
+   */
+  public void setPageCodec(Codec<String> pageCodec) {
+    this.pageCodec = pageCodec;
+  }
+
+  /**
+   * 启动时预加载脚本 紧凑布局的会话写入在pipeline里只发EVALSHA
+   *
+   * @param jedis
+   */
+  public static void loadScripts(Jedis jedis) {
+    COMPACT_SESSION.load(jedis);
+    UPDATE_CART.load(jedis);
+    MERGE_CART.load(jedis);
+    MERGE_REMOTE_CART.load(jedis);
+    ADD_VIEWS.load(jedis);
+  }
+
+  /**
+   * 设置会话key布局 分片部署时用SessionKeys.sharded
+   *
+   * @param sessionKeys
+   */
+  public void setSessionKeys(SessionKeys sessionKeys) {
+    this.sessionKeys = sessionKeys;
+  }
+
+  public SessionKeys getSessionKeys() {
+    return sessionKeys;
+  }
+
+  /**
+   * 设置浏览量衰减参数 必须和DecrView一致
+   *
+   * @param viewDecay
+   */
+  public void setViewDecay(ViewDecay viewDecay) {
+    this.viewDecay = viewDecay;
+  }
+
+  /**
+   * 设置热门商品快照 canCache改为查本地集合,快照过期时回退到zrank
+   *
+   * @param topViewed
+   */
+  public void setTopViewed(TopViewedSnapshot topViewed) {
+    this.topViewed = topViewed;
+  }
+
+  /**
+   * 设置读副本路由 checkToken,页面缓存的读取和canCache的zrank改为读副本,副本落后超限时回到主库
+   *
+   * <p>刚写入就要读到的场景(登录后立即checkToken)用ReplicaRouter.pinPrimary
+   *
+   * @param replicaRouter
+   */
+  public void setReplicaRouter(ReplicaRouter replicaRouter) {
+    this.replicaRouter = replicaRouter;
+  }
+
+  /** 可以读副本的操作 */
+  private <T> T read(Jedis jedis, Function<Jedis, T> read) {
+    ReplicaRouter router = replicaRouter;
+    return router == null ? read.apply(jedis) : router.read(jedis, read);
+  }
+
   /**
    * 尝试获取token
    *
@@ -23,11 +177,33 @@ public class WebCache extends BaseClass {
    * @return
    */
   public String checkToken(Jedis jedis, String token) {
-    return jedis.hget("login:", token);
+    SessionKeys keys = sessionKeys;
+    int partition = keys.partition(token);
+    String hash =
+        keys.isCompact() ? keys.session(partition, keys.bucket(token)) : keys.login(partition);
+    return RedisMetrics.time("checkToken", () -> read(jedis, j -> j.hget(hash, token)));
   }
 
   /**
-   * 更新cookie
+   * 最近浏览的商品 最新在前
+   *
+   * @param jedis
+   * @param token
+   * @return
+   */
+  public List<String> recentlyViewed(Jedis jedis, String token) {
+    SessionKeys keys = sessionKeys;
+    int partition = keys.partition(token);
+    if (!keys.isCompact()) {
+      return new ArrayList<>(jedis.zrevrange(keys.viewed(partition, token), 0, -1));
+    }
+    String views =
+        jedis.hget(keys.session(partition, keys.bucket(token)), token + SessionKeys.VIEWS_SUFFIX);
+    return views == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(views.split("\n")));
+  }
+
+  /**
+   * 更新cookie 所有命令走一个pipeline,一次往返
    *
    * @param jedis
    * @param token
@@ -35,18 +211,127 @@ public class WebCache extends BaseClass {
    * @param product
    */
   public void updateToken(Jedis jedis, String token, String user, String product) {
-    Long timestamp = System.currentTimeMillis() / 1000;
-    // 用户令牌
-    jedis.hset("login:", token, user);
-    // 保存最近一次的token
-    jedis.zadd("recent:", timestamp, token);
-    if (!StringUtils.isBlank(product)) {
-      // 访问过的商品
-      jedis.zadd("viewed:" + token, timestamp, product);
-      // 最近浏览的25个商品
-      jedis.zremrangeByRank("viewed:" + token, 0, -26);
-      jedis.zincrby("viewed:", -1, product);
+    RedisMetrics.run(
+        "updateToken",
+        () -> writeTokens(jedis, Collections.singletonList(new TokenHit(token, user, product))));
+  }
+
+  /**
+   * 批量更新cookie 合并一段时间内的访问,一次往返刷新
+   *
+   * @param jedis
+   * @param hits
+   */
+  public void updateTokens(Jedis jedis, List<TokenHit> hits) {
+    if (hits == null || hits.isEmpty()) {
+      return;
     }
+    RedisMetrics.run("updateTokens", () -> writeTokens(jedis, hits));
+  }
+
+  private void writeTokens(Jedis jedis, List<TokenHit> hits) {
+    long timestamp = System.currentTimeMillis() / 1000;
+    Pipeline pipeline = jedis.pipelined();
+    LuaScript.Batch sessions = writeSessions(pipeline, hits, timestamp);
+    LuaScript.Batch views = writeViews(pipeline, hits, timestamp);
+    pipeline.sync();
+    sessions.resendNoScript(jedis);
+    views.resendNoScript(jedis);
+  }
+
+  /**
+   * 会话部分:login:,recent:,viewed:token,按分区合并成多字段HSET/ZADD;紧凑布局下每个会话一次脚本写入所在的桶
+   *
+   * @return 紧凑布局下的脚本调用,pipeline.sync后调用resendNoScript
+   */
+  LuaScript.Batch writeSessions(Pipeline pipeline, List<TokenHit> hits, long timestamp) {
+    SessionKeys keys = sessionKeys;
+    Map<Integer, Map<String, String>> logins = new HashMap<>();
+    Map<Integer, Map<String, Double>> recents = new HashMap<>();
+    for (TokenHit hit : hits) {
+      int partition = keys.partition(hit.getToken());
+      logins.computeIfAbsent(partition, p -> new HashMap<>()).put(hit.getToken(), hit.getUser());
+      recents
+          .computeIfAbsent(partition, p -> new HashMap<>())
+          .put(hit.getToken(), (double) timestamp);
+    }
+    for (Map.Entry<Integer, Map<String, Double>> entry : recents.entrySet()) {
+      // 保存最近一次的token
+      pipeline.zadd(keys.recent(entry.getKey()), entry.getValue());
+      signalSweeper(pipeline, CleanSession.wakeupChannel(keys, entry.getKey()));
+    }
+    LuaScript.Batch batch = COMPACT_SESSION.batch();
+    if (keys.isCompact()) {
+      // 只发sha,脚本体不随每个会话重复传输
+      for (TokenHit hit : hits) {
+        String token = hit.getToken();
+        batch.evalsha(
+            pipeline,
+            Collections.singletonList(keys.session(keys.partition(token), keys.bucket(token))),
+            Arrays.asList(
+                token,
+                hit.getUser(),
+                StringUtils.isBlank(hit.getProduct()) ? "" : hit.getProduct(),
+                String.valueOf(RECENT_VIEWS)));
+      }
+      return batch;
+    }
+    for (Map.Entry<Integer, Map<String, String>> entry : logins.entrySet()) {
+      // 用户令牌
+      pipeline.hset(keys.login(entry.getKey()), entry.getValue());
+    }
+    for (TokenHit hit : hits) {
+      if (!StringUtils.isBlank(hit.getProduct())) {
+        String viewed = keys.viewed(keys.partition(hit.getToken()), hit.getToken());
+        // 访问过的商品
+        pipeline.zadd(viewed, timestamp, hit.getProduct());
+        // 最近浏览的25个商品
+        pipeline.zremrangeByRank(viewed, 0, -RECENT_VIEWS - 1);
+      }
+    }
+    return batch;
+  }
+
+  /** 唤醒等待中的CleanSession,按频道节流,不多一次往返 */
+  private void signalSweeper(Pipeline pipeline, String channel) {
+    if (SESSION_SIGNAL_MILLIS <= 0) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    Long last = sessionSignals.get(channel);
+    if (last != null && now - last < SESSION_SIGNAL_MILLIS) {
+      return;
+    }
+    boolean won =
+        last == null
+            ? sessionSignals.putIfAbsent(channel, now) == null
+            : sessionSignals.replace(channel, last, now);
+    if (won) {
+      Wakeup.publish(pipeline, channel);
+    }
+  }
+
+  /**
+   * 全局浏览量部分:viewed:按衰减权重累加,分值越小越热门 权重在redis里按viewed:epoch计算,一次EVALSHA
+   *
+   * @return 脚本调用,pipeline.sync后调用resendNoScript
+   */
+  LuaScript.Batch writeViews(Pipeline pipeline, List<TokenHit> hits, long timestamp) {
+    ViewDecay decay = viewDecay;
+    List<String> args = new ArrayList<>(hits.size() + 3);
+    args.add(String.valueOf(timestamp));
+    args.add(String.valueOf(decay.epochStart(timestamp)));
+    args.add(String.valueOf(decay.getHalfLifeSeconds()));
+    for (TokenHit hit : hits) {
+      if (!StringUtils.isBlank(hit.getProduct())) {
+        args.add(hit.getProduct());
+      }
+    }
+    LuaScript.Batch batch = ADD_VIEWS.batch();
+    if (args.size() > 3) {
+      batch.evalsha(pipeline, Arrays.asList("viewed:", "viewed:epoch"), args);
+    }
+    return batch;
   }
 
   /**
@@ -58,15 +343,150 @@ public class WebCache extends BaseClass {
    * @param count
    */
   public void addCart(Jedis jedis, String session, String product, int count) {
-    if (count <= 0) {
-      jedis.hdel("cart:" + session, product);
-    } else {
-      jedis.hset("cart:" + session, product, String.valueOf(count));
+    String cart = cartKey(session);
+    RedisMetrics.time(
+        "addCart",
+        () ->
+            count <= 0
+                ? jedis.hdel(cart, product)
+                : jedis.hset(cart, product, String.valueOf(count)));
+  }
+
+  /**
+   * 批量更新购物车 数量大于0的一次HSET,其余一次HDEL,同一个pipeline一次往返
+   *
+   * @param jedis
+   * @param session
+   * @param items 商品和数量,数量<=0表示移除
+   */
+  public void updateCart(Jedis jedis, String session, Map<String, Integer> items) {
+    if (items.isEmpty()) {
+      return;
+    }
+    String cart = cartKey(session);
+    Map<String, String> sets = new HashMap<>();
+    List<String> removes = new ArrayList<>();
+    items.forEach(
+        (product, count) -> {
+          if (count <= 0) {
+            removes.add(product);
+          } else {
+            sets.put(product, String.valueOf(count));
+          }
+        });
+    RedisMetrics.run(
+        "updateCart",
+        () -> {
+          Pipeline pipeline = jedis.pipelined();
+          if (!sets.isEmpty()) {
+            pipeline.hset(cart, sets);
+          }
+          if (!removes.isEmpty()) {
+            pipeline.hdel(cart, removes.toArray(new String[0]));
+          }
+          pipeline.sync();
+        });
+  }
+
+  /**
+   * 批量更新购物车并返回更新后的内容 一次EVALSHA原子完成,读到的就是本次更新后的快照
+   *
+   * @param jedis
+   * @param session
+   * @param items 商品和数量,数量<=0表示移除,为空时只读取
+   * @return 商品到数量
+   */
+  public Map<String, String> updateCartAndGet(
+      Jedis jedis, String session, Map<String, Integer> items) {
+    List<String> keys = Collections.singletonList(cartKey(session));
+    List<String> args = pairs(items);
+    return RedisMetrics.time(
+        "updateCartAndGet", () -> toMap(UPDATE_CART.eval(jedis, keys, args)));
+  }
+
+  /**
+   * 匿名会话登录后合并购物车 源购物车的数量累加到目标购物车,源购物车删除,一次EVALSHA原子完成
+   *
+   * <p>两个购物车必须在同一节点上,分片部署时用ShardedSessions.mergeCart
+   *
+   * @param jedis
+   * @param fromSession 匿名会话
+   * @param toSession 登录后的会话
+   * @return 合并后的购物车
+   */
+  public Map<String, String> mergeCart(Jedis jedis, String fromSession, String toSession) {
+    if (fromSession.equals(toSession)) {
+      return updateCartAndGet(jedis, toSession, Collections.emptyMap());
+    }
+    List<String> keys = Arrays.asList(cartKey(toSession), cartKey(fromSession));
+    return RedisMetrics.time(
+        "mergeCart", () -> toMap(MERGE_CART.eval(jedis, keys, Collections.emptyList())));
+  }
+
+  /**
+   * 把已读出的源购物车累加到目标购物车 用于源购物车在别的节点上的合并
+   *
+   * <p>同时写入合并标记,同一个源购物车在标记删除前重复调用不会重复累加
+   *
+   * @param jedis 目标会话所在节点的连接
+   * @param fromSession
+   * @param toSession
+   * @param items 商品和要累加的数量
+   * @return 合并后的购物车
+   */
+  Map<String, String> addToCart(
+      Jedis jedis, String fromSession, String toSession, Map<String, String> items) {
+    List<String> args = new ArrayList<>(items.size() * 2 + 1);
+    args.add(String.valueOf(CART_MERGE_MARKER_SECONDS));
+    items.forEach(
+        (product, count) -> {
+          args.add(product);
+          args.add(count);
+        });
+    List<String> keys = Arrays.asList(cartKey(toSession), cartMergeKey(fromSession, toSession));
+    return RedisMetrics.time(
+        "mergeCart", () -> toMap(MERGE_REMOTE_CART.eval(jedis, keys, args)));
+  }
+
+  /** 源购物车删除后清掉合并标记,之后同一会话可以再次合并 */
+  void clearCartMerge(Jedis jedis, String fromSession, String toSession) {
+    jedis.del(cartMergeKey(fromSession, toSession));
+  }
+
+  private String cartMergeKey(String fromSession, String toSession) {
+    return sessionKeys.cartMerge(sessionKeys.partition(toSession), fromSession);
+  }
+
+  String cartKey(String session) {
+    return sessionKeys.cart(sessionKeys.partition(session), session);
+  }
+
+  private static List<String> pairs(Map<String, Integer> items) {
+    List<String> args = new ArrayList<>(items.size() * 2);
+    items.forEach(
+        (product, count) -> {
+          args.add(product);
+          args.add(String.valueOf(count));
+        });
+    return args;
+  }
+
+  /** HGETALL的平铺回复转成map */
+  @SuppressWarnings("unchecked")
+  private static Map<String, String> toMap(Object reply) {
+    List<String> flat = (List<String>) reply;
+    Map<String, String> map = new HashMap<>(flat.size());
+    for (int i = 0; i + 1 < flat.size(); i += 2) {
+      map.put(flat.get(i), flat.get(i + 1));
     }
+    return map;
   }
 
   /**
-   * 缓存页面请求
+   * 缓存页面请求 配置了nearCache时先查本地,未命中再查redis
+   *
+   * <p>防击穿:进程内同一页面的并发未命中合并为一次回源,跨进程用lock:租约保证只有一个节点重新生成;
+   * 开启staleSeconds后,页面在TTL的最后staleSeconds秒内视为过期但可用,一个请求负责刷新,其余请求继续返回旧页面
    *
    * @param jedis
    * @param callback
@@ -74,62 +494,172 @@ public class WebCache extends BaseClass {
    * @return
    */
   public String cacheRequest(Jedis jedis, Callback callback, String request) {
-    if (!canCache(jedis, request)) {
+    return RedisMetrics.time("cacheRequest", () -> lookupPage(jedis, callback, request));
+  }
+
+  private String lookupPage(Jedis jedis, Callback callback, String request) {
+    RequestKey requestKey = RequestKey.parse(request);
+    if (!canCache(jedis, requestKey)) {
       return callback != null ? callback.call(request) : null;
     }
-    String pageKey = "cache:" + hashRequest(request);
-    String content = jedis.get(pageKey);
-    if (StringUtils.isBlank(content) && callback != null) {
-      content = callback.call(request);
-      jedis.setex(pageKey, 300, content);
+    String pageKey = "cache:" + requestKey.cacheKey();
+    if (nearCache != null) {
+      String content = nearCache.get(pageKey);
+      if (content != null) {
+        return content;
+      }
+    }
+    // 内容和剩余TTL一次取回,本地副本不会比redis里的活得更久
+    List<Object> page =
+        read(
+            jedis,
+            j -> {
+              Pipeline pipeline = j.pipelined();
+              pipeline.get(bytes(pageKey));
+              pipeline.ttl(pageKey);
+              return pipeline.syncAndReturnAll();
+            });
+    String content = pageCodec.decode((byte[]) page.get(0));
+    long ttl = (Long) page.get(1);
+    if (StringUtils.isBlank(content)) {
+      if (callback == null) {
+        return content;
+      }
+      return pageLoads.execute(pageKey, () -> loadPage(jedis, callback, request, pageKey));
+    }
+    // 没有TTL的页面按新鲜处理
+    long freshSeconds = ttl < 0 ? PAGE_TTL_SECONDS : ttl - staleSeconds;
+    if (freshSeconds > 0) {
+      if (nearCache != null) {
+        nearCache.put(pageKey, content, freshSeconds);
+      }
+      return content;
+    }
+    // 已过期但仍在stale窗口内:本进程只有一个请求去刷新,其余直接返回旧页面
+    // 刷新拿不到租约时返回null,和未命中的回源分开合并,未命中的请求不会等到一个null
+    if (callback != null) {
+      String refreshed =
+          pageLoads.tryExecute(
+              "refresh:" + pageKey, () -> refreshPage(jedis, callback, request, pageKey));
+      if (refreshed != null) {
+        return refreshed;
+      }
     }
     return content;
   }
 
   /**
-   * JSON
+   * 页面不存在:拿到租约的节点回源,其他节点等它写回,租约到期仍没有结果时自己回源
+   *
+   * <p>拿到租约后先在主库再读一次,上一个租约持有者可能刚写回并释放了租约
+   */
+  private String loadPage(Jedis jedis, Callback callback, String request, String pageKey) {
+    String lockKey = "lock:" + pageKey;
+    long deadline = System.currentTimeMillis() + LEASE_MILLIS;
+    while (true) {
+      String lease = RedisLease.tryAcquire(jedis, lockKey, LEASE_MILLIS);
+      if (lease != null) {
+        try {
+          String content = pageCodec.decode(jedis.get(bytes(pageKey)));
+          if (!StringUtils.isBlank(content)) {
+            return content;
+          }
+          return storePage(jedis, pageKey, callback.call(request));
+        } finally {
+          RedisLease.release(jedis, lockKey, lease);
+        }
+      }
+      if (System.currentTimeMillis() >= deadline) {
+        return storePage(jedis, pageKey, callback.call(request));
+      }
+      try {
+        Thread.sleep(LEASE_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return callback.call(request);
+      }
+      String content = pageCodec.decode(jedis.get(bytes(pageKey)));
+      if (!StringUtils.isBlank(content)) {
+        return content;
+      }
+    }
+  }
+
+  /**
+   * 旧页面仍可用:拿不到租约说明别的节点在刷新,返回null让调用方继续用旧页面
+   *
+   * <p>拿到租约后先在主库核对TTL,别的节点刚刷新过就直接用它的结果
+   */
+  private String refreshPage(Jedis jedis, Callback callback, String request, String pageKey) {
+    String lockKey = "lock:" + pageKey;
+    String lease = RedisLease.tryAcquire(jedis, lockKey, LEASE_MILLIS);
+    if (lease == null) {
+      return null;
+    }
+    try {
+      Pipeline pipeline = jedis.pipelined();
+      Response<byte[]> page = pipeline.get(bytes(pageKey));
+      Response<Long> ttl = pipeline.ttl(pageKey);
+      pipeline.sync();
+      String content = pageCodec.decode(page.get());
+      if (!StringUtils.isBlank(content) && (ttl.get() < 0 || ttl.get() - staleSeconds > 0)) {
+        return content;
+      }
+      return storePage(jedis, pageKey, callback.call(request));
+    } finally {
+      RedisLease.release(jedis, lockKey, lease);
+    }
+  }
+
+  private String storePage(Jedis jedis, String pageKey, String content) {
+    if (content == null) {
+      return null;
+    }
+    jedis.setex(bytes(pageKey), PAGE_TTL_SECONDS + staleSeconds, pageCodec.encode(content));
+    if (nearCache != null) {
+      nearCache.put(pageKey, content, PAGE_TTL_SECONDS);
+    }
+    return content;
+  }
+
+  private static byte[] bytes(String key) {
+    return key.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * JSON 排期和唤醒CacheRows走一个pipeline
    *
    * @param conn
    * @param rowId
    * @param delay
    */
   public void scheduleRowCache(Jedis conn, String rowId, int delay) {
-    conn.zadd("delay:", delay, rowId);
-    conn.zadd("schedule:", System.currentTimeMillis() / 1000, rowId);
+    Pipeline pipeline = conn.pipelined();
+    pipeline.zadd("delay:", delay, rowId);
+    pipeline.zadd("schedule:", System.currentTimeMillis() / 1000, rowId);
+    Wakeup.publish(pipeline, CacheRows.WAKEUP_CHANNEL);
+    pipeline.sync();
   }
 
-  private String hashRequest(String request) {
-    return String.valueOf(request.hashCode());
+  Boolean canCache(Jedis jedis, String request) {
+    return canCache(jedis, RequestKey.parse(request));
   }
 
-  private Boolean canCache(Jedis jedis, String request) {
-    try {
-      URL url = new URL(request);
-      Map<String, String> params = new HashMap<>();
-      if (!StringUtils.isBlank(url.getQuery())) {
-        // 取参数
-        for (String param : url.getQuery().split("&")) {
-          String[] pair = param.split("=", 2);
-          params.put(pair[0], pair.length == 2 ? pair[1] : null);
-        }
-      }
-      String prodId = extractProdId(params);
-      if (prodId == null || isDynamic(params)) {
-        return false;
-      }
-      Long rank = jedis.zrank("viewed:", prodId);
-      return rank != null && rank < 10000;
-    } catch (MalformedURLException e) {
+  private Boolean canCache(Jedis jedis, RequestKey request) {
+    if (request == null) {
       return false;
     }
-  }
-
-  private boolean isDynamic(Map<String, String> params) {
-    return params.containsKey("_");
-  }
-
-  private String extractProdId(Map<String, String> params) {
-    return params.get("prod");
+    String prodId = request.getParam("prod");
+    // 动态页面不缓存
+    if (prodId == null || request.hasParam("_")) {
+      return false;
+    }
+    TopViewedSnapshot snapshot = topViewed;
+    if (snapshot != null && snapshot.isFresh()) {
+      return snapshot.contains(prodId);
+    }
+    Long rank = read(jedis, j -> j.zrank("viewed:", prodId));
+    return rank != null && rank < TOP_VIEWED;
   }
 
   public void testLoginCookies(Jedis jedis) throws InterruptedException {
@@ -150,7 +680,13 @@ public class WebCache extends BaseClass {
     System.out.println("Let's drop the maximum number of cookies to 0 to clean them out");
     System.out.println("We will start a thread to do the cleaning, while we stop it later");
 
-    CleanSession thread = new CleanSession(0, jedis);
+    // 后台线程用自己的连接,Jedis不能跨线程共享
+    Jedis worker = getJedis(JedisUtis.getJedisPool());
+    worker.select(jedis.getDB());
+    CleanSession thread = new CleanSession(0, worker);
+    thread.setWakeup(
+        Wakeup.subscribe(
+            JedisUtis.getJedisPool(), CleanSession.wakeupChannel(SessionKeys.DEFAULT, 0)));
     thread.start();
     Thread.sleep(1000);
     thread.quit();
@@ -158,6 +694,7 @@ public class WebCache extends BaseClass {
     if (thread.isAlive()) {
       throw new RuntimeException("The clean sessions thread is still alive?!?");
     }
+    worker.close();
 
     long s = jedis.hlen("login:");
     System.out.println("The current number of sessions still available is: " + s);
@@ -181,8 +718,26 @@ public class WebCache extends BaseClass {
 
     assert r.size() >= 1;
 
+    System.out.println("Update several cart lines in one round trip");
+    Map<String, Integer> lines = new HashMap<>();
+    lines.put("itemY", 0);
+    lines.put("itemZ", 2);
+    lines.put("itemW", 1);
+    r = updateCartAndGet(jedis, token, lines);
+    System.out.println("Our shopping cart now has: " + r);
+    assert r.size() == 2 && !r.containsKey("itemY");
+
+    String anonymous = UUID.randomUUID().toString();
+    addCart(jedis, anonymous, "itemZ", 1);
+    r = mergeCart(jedis, anonymous, token);
+    System.out.println("After merging the anonymous cart: " + r);
+    assert "3".equals(r.get("itemZ"));
+
     System.out.println("Let's clean out our sessions and carts");
-    CleanSessionCart thread = new CleanSessionCart(0, jedis);
+    // 后台线程用自己的连接,Jedis不能跨线程共享
+    Jedis worker = getJedis(JedisUtis.getJedisPool());
+    worker.select(jedis.getDB());
+    CleanSessionCart thread = new CleanSessionCart(0, worker);
     thread.start();
     Thread.sleep(1000);
     thread.quit();
@@ -190,6 +745,7 @@ public class WebCache extends BaseClass {
     if (thread.isAlive()) {
       throw new RuntimeException("The clean sessions thread is still alive?!?");
     }
+    worker.close();
 
     r = jedis.hgetAll("cart:" + token);
     System.out.println("Our shopping cart now contains:");
@@ -212,12 +768,17 @@ public class WebCache extends BaseClass {
 
     System.out.println("We'll start a caching thread that will cache the data...");
 
-    CacheRows thread = new CacheRows(jedis);
+    // 后台线程用自己的连接,Jedis不能跨线程共享
+    Jedis worker = getJedis(JedisUtis.getJedisPool());
+    worker.select(jedis.getDB());
+    CacheRows thread = new CacheRows(worker);
+    thread.setWakeup(Wakeup.subscribe(JedisUtis.getJedisPool(), CacheRows.WAKEUP_CHANNEL));
     thread.start();
 
     Thread.sleep(1000);
     System.out.println("Our cached data looks like:");
-    String r = jedis.get("inv:itemX");
+    InventoryCodec codec = InventoryCodec.binary(256);
+    Inventory r = codec.decode(jedis.get(bytes("inv:itemX")));
     System.out.println(r);
     assert r != null;
     System.out.println();
@@ -225,24 +786,25 @@ public class WebCache extends BaseClass {
     System.out.println("We'll check again in 5 seconds...");
     Thread.sleep(5000);
     System.out.println("Notice that the data has changed...");
-    String r2 = jedis.get("inv:itemX");
+    Inventory r2 = codec.decode(jedis.get(bytes("inv:itemX")));
     System.out.println(r2);
     System.out.println();
     assert r2 != null;
-    assert !r.equals(r2);
+    assert !r.toString().equals(r2.toString());
 
     System.out.println("Let's force un-caching");
-    scheduleRowCache(jedis, "prod", -1);
+    scheduleRowCache(jedis, "itemX", -1);
     Thread.sleep(1000);
-    r = jedis.get("inv:itemX");
-    System.out.println("The cache was cleared? " + (r == null));
-    assert r == null;
+    boolean cleared = jedis.get(bytes("inv:itemX")) == null;
+    System.out.println("The cache was cleared? " + cleared);
+    assert cleared;
 
     thread.quit();
     Thread.sleep(2000);
     if (thread.isAlive()) {
       throw new RuntimeException("The database caching thread is still alive?!?");
     }
+    worker.close();
   }
 
   public void testCacheRequest(Jedis conn) {
@@ -265,25 +827,117 @@ public class WebCache extends BaseClass {
     System.out.println("We ended up getting the same response!\n" + result2);
 
     assert result.equals(result2);
+    if (nearCache != null) {
+      System.out.println("Near cache stats: " + nearCache);
+    }
 
     assert !canCache(conn, "http://test.com/");
     assert !canCache(conn, "http://test.com/?item=itemX&_=1234536");
   }
 
+  public void testUpdateTokenThroughput(Jedis jedis) {
+    System.out.println("\n----- testUpdateTokenThroughput -----");
+    int total = 10000;
+    String[] tokens = new String[total];
+    for (int i = 0; i < total; i++) {
+      tokens[i] = UUID.randomUUID().toString();
+    }
+
+    // 逐条命令,每次访问5次往返
+    long start = System.nanoTime();
+    for (String token : tokens) {
+      long timestamp = System.currentTimeMillis() / 1000;
+      jedis.hset("login:", token, "username");
+      jedis.zadd("recent:", timestamp, token);
+      jedis.zadd("viewed:" + token, timestamp, "itemX");
+      jedis.zremrangeByRank("viewed:" + token, 0, -26);
+      jedis.zincrby("viewed:", -1, "itemX");
+    }
+    printThroughput("sequential", total, System.nanoTime() - start);
+
+    start = System.nanoTime();
+    for (String token : tokens) {
+      updateToken(jedis, token, "username", "itemX");
+    }
+    printThroughput("pipelined", total, System.nanoTime() - start);
+
+    start = System.nanoTime();
+    List<TokenHit> batch = new ArrayList<>();
+    for (String token : tokens) {
+      batch.add(new TokenHit(token, "username", "itemX"));
+      if (batch.size() == 100) {
+        updateTokens(jedis, batch);
+        batch.clear();
+      }
+    }
+    updateTokens(jedis, batch);
+    printThroughput("batched(100)", total, System.nanoTime() - start);
+  }
+
+  /** 需要redis.replicas指向主库的副本,没有配置时跳过 连接走连接池配置的库 */
+  public void testReplicaReads() throws InterruptedException {
+    System.out.println("\n----- testReplicaReads -----");
+    ReplicaRouter router = ReplicaRouter.fromConfig();
+    if (router == null) {
+      System.out.println("redis.replicas is not configured, skipping");
+      return;
+    }
+    setReplicaRouter(router);
+    String token = UUID.randomUUID().toString();
+    try (Jedis primary = getJedis(JedisUtis.getJedisPool())) {
+      // 和其它测试用同一个库,路由到副本的读也会切到这个库
+      primary.select(14);
+      // 等第一次复制检查
+      Thread.sleep(1000);
+      updateToken(primary, token, "username", null);
+      ReplicaRouter.Pin pin = router.pinPrimary();
+      try {
+        String r = checkToken(primary, token);
+        System.out.println("Pinned to the primary right after login: " + r);
+        assert "username".equals(r);
+      } finally {
+        pin.close();
+      }
+      long start = System.nanoTime();
+      while (checkToken(primary, token) == null) {
+        Thread.sleep(1);
+      }
+      System.out.println(
+          "Visible through routed reads after " + (System.nanoTime() - start) / 1000 + "us");
+      for (int i = 0; i < 1000; i++) {
+        checkToken(primary, token);
+      }
+      router.getReplicas().forEach(replica -> System.out.println("  " + replica));
+      primary.hdel("login:", token);
+      primary.zrem("recent:", token);
+    } finally {
+      setReplicaRouter(null);
+      router.close();
+    }
+  }
+
+  private static void printThroughput(String name, int ops, long nanos) {
+    System.out.println(name + ": " + (ops * 1_000_000_000L / Math.max(nanos, 1)) + " hits/s");
+  }
+
   public void run() {
     Jedis jedis = getJedis(JedisUtis.getJedisPool());
     jedis.select(14);
     try {
+      loadScripts(jedis);
       testLoginCookies(jedis);
       testShopppingCartCookies(jedis);
       testCacheRows(jedis);
       testCacheRequest(jedis);
+      testUpdateTokenThroughput(jedis);
+      testReplicaReads();
     } catch (InterruptedException e) {
       e.printStackTrace();
     }
   }
 
   public static void main(String[] args) {
+    RedisPools.warmUp(RedisPools.REQUEST);
     WebCache webCache = new WebCache();
     webCache.run();
   }
@@ -0,0 +1,113 @@
+package com.pure.redis.util;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolAbstract;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 把阻塞的Jedis调用放到专用执行器上,返回CompletableFuture
+ *
+ * <p>运行时支持虚拟线程(JDK21+)时每个调用一个虚拟线程,否则用固定大小的平台线程池; 每个调用从连接池借一个连接,用完归还;
+ * 同时在途的调用数超过上限时最多等acquireTimeoutMillis,仍拿不到许可就以RejectedExecutionException失败,形成背压
+ */
+@Slf4j
+public class AsyncRedis implements AutoCloseable {
+  private final JedisPoolAbstract pool;
+  private final ExecutorService executor;
+  private final Semaphore inFlight;
+  private final long acquireTimeoutMillis;
+
+  /**
+   * @param pool 共享连接池
+   * @param maxInFlight 最大在途调用数,一般等于连接池maxTotal
+   * @param acquireTimeoutMillis 在途满时调用方最多等待的时间
+   */
+  public AsyncRedis(JedisPoolAbstract pool, int maxInFlight, long acquireTimeoutMillis) {
+    this.pool = pool;
+    this.inFlight = new Semaphore(maxInFlight);
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+    this.executor = newBlockingIoExecutor(maxInFlight);
+  }
+
+  /** 请求连接池,在途上限为request池的maxTotal */
+  public static AsyncRedis forRequests() {
+    int maxTotal = RedisPools.getConfig().getPoolInt(RedisPools.REQUEST, "maxTotal", 8);
+    return new AsyncRedis(RedisPools.request(), maxTotal, 100);
+  }
+
+  /**
+   * 异步执行
+   *
+   * @param call 在借来的连接上执行的操作
+   * @return
+   */
+  public <T> CompletableFuture<T> call(Function<Jedis, T> call) {
+    try {
+      if (!inFlight.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        return failed(new RejectedExecutionException("too many in-flight redis calls"));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return failed(e);
+    }
+    try {
+      return CompletableFuture.supplyAsync(
+          () -> {
+            try (Jedis jedis = pool.getResource()) {
+              return call.apply(jedis);
+            } finally {
+              inFlight.release();
+            }
+          },
+          executor);
+    } catch (RejectedExecutionException e) {
+      inFlight.release();
+      return failed(e);
+    }
+  }
+
+  public int availablePermits() {
+    return inFlight.availablePermits();
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  private static <T> CompletableFuture<T> failed(Throwable t) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(t);
+    return future;
+  }
+
+  /** 有虚拟线程就用虚拟线程,否则固定大小的daemon线程池,线程数与在途上限一致 */
+  private static ExecutorService newBlockingIoExecutor(int threads) {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      ExecutorService executor = (ExecutorService) method.invoke(null);
+      log.info("async redis calls run on virtual threads");
+      return executor;
+    } catch (ReflectiveOperationException e) {
+      AtomicInteger seq = new AtomicInteger();
+      ThreadFactory factory =
+          r -> {
+            Thread t = new Thread(r, "async-redis-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          };
+      return Executors.newFixedThreadPool(threads, factory);
+    }
+  }
+}
@@ -0,0 +1,14 @@
+package com.pure.redis.util;
+
+/** 缓存值编解码 配合Jedis的byte[]接口使用 */
+public interface Codec<T> {
+  byte[] encode(T value);
+
+  /**
+   * 解码,需要兼容没有格式头的旧值
+   *
+   * @param bytes redis里取到的值,可能为null
+   * @return
+   */
+  T decode(byte[] bytes);
+}
@@ -0,0 +1,124 @@
+package com.pure.redis.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 编码值的格式头 [0xFF][flags][payload]
+ *
+ * <p>0xFF不会出现在UTF-8文本和JSON里,没有这个头的值按旧格式处理,新旧值可以同时存在;
+ * flags低4位是格式编号,最高位表示payload经过Deflate压缩,压缩时payload前4字节是原始长度
+ */
+public final class CodecFrames {
+  public static final int FORMAT_ROW = 1;
+  public static final int FORMAT_TEXT = 2;
+
+  private static final byte MAGIC = (byte) 0xFF;
+  private static final int COMPRESSED = 0x80;
+  private static final int HEADER = 2;
+
+  private CodecFrames() {}
+
+  /**
+   * 加格式头,超过阈值时压缩,压缩后没有变小则保留原文
+   *
+   * @param format 格式编号
+   * @param payload
+   * @param compressThreshold 超过多少字节压缩,<=0不压缩
+   * @return
+   */
+  public static byte[] wrap(int format, byte[] payload, int compressThreshold) {
+    if (compressThreshold > 0 && payload.length >= compressThreshold) {
+      byte[] compressed = deflate(payload);
+      if (compressed.length + 4 < payload.length) {
+        byte[] out = new byte[HEADER + 4 + compressed.length];
+        out[0] = MAGIC;
+        out[1] = (byte) (format | COMPRESSED);
+        writeInt(out, HEADER, payload.length);
+        System.arraycopy(compressed, 0, out, HEADER + 4, compressed.length);
+        return out;
+      }
+    }
+    byte[] out = new byte[HEADER + payload.length];
+    out[0] = MAGIC;
+    out[1] = (byte) format;
+    System.arraycopy(payload, 0, out, HEADER, payload.length);
+    return out;
+  }
+
+  /** 是否带格式头 */
+  public static boolean isFramed(byte[] bytes) {
+    return bytes != null && bytes.length >= HEADER && bytes[0] == MAGIC;
+  }
+
+  public static int format(byte[] bytes) {
+    return bytes[1] & 0x0F;
+  }
+
+  /** 取出payload,压缩过的先解压 */
+  public static byte[] payload(byte[] bytes) {
+    if ((bytes[1] & COMPRESSED) == 0) {
+      return Arrays.copyOfRange(bytes, HEADER, bytes.length);
+    }
+    int length = readInt(bytes, HEADER);
+    return inflate(bytes, HEADER + 4, bytes.length - HEADER - 4, length);
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+      byte[] buf = new byte[Math.min(data.length, 8192) + 64];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buf);
+        out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] data, int offset, int len, int originalLength) {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data, offset, len);
+      byte[] out = new byte[originalLength];
+      int n = 0;
+      while (n < originalLength && !inflater.finished()) {
+        int read = inflater.inflate(out, n, originalLength - n);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        n += read;
+      }
+      if (n != originalLength) {
+        throw new IllegalArgumentException("corrupt compressed value");
+      }
+      return out;
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("corrupt compressed value", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static void writeInt(byte[] out, int offset, int v) {
+    out[offset] = (byte) (v >>> 24);
+    out[offset + 1] = (byte) (v >>> 16);
+    out[offset + 2] = (byte) (v >>> 8);
+    out[offset + 3] = (byte) v;
+  }
+
+  private static int readInt(byte[] in, int offset) {
+    return ((in[offset] & 0xFF) << 24)
+        | ((in[offset + 1] & 0xFF) << 16)
+        | ((in[offset + 2] & 0xFF) << 8)
+        | (in[offset + 3] & 0xFF);
+  }
+}
@@ -0,0 +1,105 @@
+package com.pure.redis.util;
+
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisDataException;
+
+/**
+ * 记录每条命令延迟的Jedis 从发出命令到读到对应回复计时,pipeline里的命令按发送顺序与回复一一对应
+ *
+ * <p>只在连接池里使用,由InstrumentedJedisFactory创建
+ */
+public class InstrumentedJedis extends Jedis {
+
+  public InstrumentedJedis(String host, int port, int connectionTimeout, int soTimeout) {
+    super(host, port, connectionTimeout, soTimeout);
+    InstrumentedClient instrumented = new InstrumentedClient(host, port);
+    instrumented.setConnectionTimeout(connectionTimeout);
+    instrumented.setSoTimeout(soTimeout);
+    this.client = instrumented;
+  }
+
+  /** 已发出未收到回复的命令队列,单线程使用 */
+  static class InstrumentedClient extends Client {
+    private ProtocolCommand[] commands = new ProtocolCommand[16];
+    private long[] sentAt = new long[16];
+    private int head;
+    private int size;
+
+    InstrumentedClient(String host, int port) {
+      super(host, port);
+    }
+
+    @Override
+    public void sendCommand(ProtocolCommand cmd, byte[]... args) {
+      enqueue(cmd, System.nanoTime());
+      try {
+        super.sendCommand(cmd, args);
+      } catch (JedisConnectionException e) {
+        failAll();
+        throw e;
+      }
+    }
+
+    @Override
+    protected Object readProtocolWithCheckingBroken() {
+      try {
+        Object reply = super.readProtocolWithCheckingBroken();
+        complete(false);
+        return reply;
+      } catch (JedisDataException e) {
+        // 错误回复,连接仍然可用
+        complete(true);
+        throw e;
+      } catch (JedisConnectionException e) {
+        failAll();
+        throw e;
+      }
+    }
+
+    private void enqueue(ProtocolCommand cmd, long now) {
+      if (size == commands.length) {
+        grow();
+      }
+      int tail = (head + size) & (commands.length - 1);
+      commands[tail] = cmd;
+      sentAt[tail] = now;
+      size++;
+    }
+
+    /** 订阅模式下的推送消息没有对应的命令,直接忽略 */
+    private void complete(boolean error) {
+      if (size == 0) {
+        return;
+      }
+      ProtocolCommand cmd = commands[head];
+      long start = sentAt[head];
+      commands[head] = null;
+      head = (head + 1) & (commands.length - 1);
+      size--;
+      RedisMetrics.command(cmd).record(System.nanoTime() - start, error);
+    }
+
+    private void failAll() {
+      while (size > 0) {
+        complete(true);
+      }
+      head = 0;
+    }
+
+    private void grow() {
+      ProtocolCommand[] newCommands = new ProtocolCommand[commands.length * 2];
+      long[] newSentAt = new long[sentAt.length * 2];
+      for (int i = 0; i < size; i++) {
+        int from = (head + i) & (commands.length - 1);
+        newCommands[i] = commands[from];
+        newSentAt[i] = sentAt[from];
+      }
+      commands = newCommands;
+      sentAt = newSentAt;
+      head = 0;
+    }
+  }
+}
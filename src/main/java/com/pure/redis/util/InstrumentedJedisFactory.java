@@ -0,0 +1,82 @@
+package com.pure.redis.util;
+
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.PooledObjectFactory;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import redis.clients.jedis.Jedis;
+
+/** 连接工厂 行为与jedis自带的JedisFactory一致,instrumented时创建InstrumentedJedis记录命令延迟 */
+class InstrumentedJedisFactory implements PooledObjectFactory<Jedis> {
+  private final String host;
+  private final int port;
+  private final RedisConfig config;
+  private final String clientName;
+  private final boolean instrumented;
+
+  InstrumentedJedisFactory(
+      String host, int port, RedisConfig config, String clientName, boolean instrumented) {
+    this.host = host;
+    this.port = port;
+    this.config = config;
+    this.clientName = clientName;
+    this.instrumented = instrumented;
+  }
+
+  @Override
+  public PooledObject<Jedis> makeObject() {
+    Jedis jedis =
+        instrumented
+            ? new InstrumentedJedis(
+                host, port, config.getConnectionTimeout(), config.getSoTimeout())
+            : new Jedis(host, port, config.getConnectionTimeout(), config.getSoTimeout());
+    try {
+      jedis.connect();
+      if (config.getPassword() != null) {
+        jedis.auth(config.getPassword());
+      }
+      if (config.getDatabase() != 0) {
+        jedis.select(config.getDatabase());
+      }
+      if (clientName != null) {
+        jedis.clientSetname(clientName);
+      }
+    } catch (RuntimeException e) {
+      jedis.close();
+      throw e;
+    }
+    return new DefaultPooledObject<>(jedis);
+  }
+
+  @Override
+  public void destroyObject(PooledObject<Jedis> pooled) {
+    Jedis jedis = pooled.getObject();
+    if (jedis.isConnected()) {
+      try {
+        jedis.quit();
+      } catch (Exception ignored) {
+        // 连接可能已经断开
+      }
+      jedis.disconnect();
+    }
+  }
+
+  @Override
+  public boolean validateObject(PooledObject<Jedis> pooled) {
+    try {
+      return "PONG".equals(pooled.getObject().ping());
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void activateObject(PooledObject<Jedis> pooled) {
+    Jedis jedis = pooled.getObject();
+    if (jedis.getDB() != config.getDatabase()) {
+      jedis.select(config.getDatabase());
+    }
+  }
+
+  @Override
+  public void passivateObject(PooledObject<Jedis> pooled) {}
+}
@@ -1,14 +1,14 @@
 package com.pure.redis.util;
 
-import redis.clients.jedis.JedisPool;
-import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPoolAbstract;
 
 public class JedisUtis {
-    private  static JedisPool jedisPool = null;
-    public static JedisPool getJedisPool(){
-        //使用默认配置8,8
-        jedisPool = new JedisPool(new JedisPoolConfig(), "192.168.1.4");
-        return jedisPool;
+    /**
+     * 进程内共享的请求连接池,地址和池大小见redis.properties
+     * 不要close,进程退出时由RedisPools统一关闭
+     */
+    public static JedisPoolAbstract getJedisPool(){
+        return RedisPools.request();
     }
 
 }
@@ -0,0 +1,75 @@
+package com.pure.redis.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 一个操作或命令的延迟分布和错误数 */
+public class LatencyMetric implements LatencyMetricMBean {
+  private final String name;
+  private final LatencyHistogram histogram = new LatencyHistogram();
+  private final AtomicLong errors = new AtomicLong();
+
+  LatencyMetric(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * 记录一次调用
+   *
+   * @param nanos 耗时纳秒
+   * @param error 是否失败
+   */
+  public void record(long nanos, boolean error) {
+    histogram.record(nanos / 1000);
+    if (error) {
+      errors.incrementAndGet();
+    }
+  }
+
+  public LatencyHistogram.Snapshot snapshot() {
+    return histogram.snapshot();
+  }
+
+  @Override
+  public long getCount() {
+    return histogram.getCount();
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.get();
+  }
+
+  @Override
+  public double getMeanMicros() {
+    return histogram.snapshot().getMean();
+  }
+
+  @Override
+  public long getP50Micros() {
+    return histogram.snapshot().percentile(50);
+  }
+
+  @Override
+  public long getP90Micros() {
+    return histogram.snapshot().percentile(90);
+  }
+
+  @Override
+  public long getP99Micros() {
+    return histogram.snapshot().percentile(99);
+  }
+
+  @Override
+  public long getP999Micros() {
+    return histogram.snapshot().percentile(99.9);
+  }
+
+  @Override
+  public long getMaxMicros() {
+    return histogram.getMax();
+  }
+}
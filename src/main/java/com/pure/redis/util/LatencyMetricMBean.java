@@ -0,0 +1,20 @@
+package com.pure.redis.util;
+
+/** 延迟指标的JMX视图 时间单位微秒 */
+public interface LatencyMetricMBean {
+  long getCount();
+
+  long getErrors();
+
+  double getMeanMicros();
+
+  long getP50Micros();
+
+  long getP90Micros();
+
+  long getP99Micros();
+
+  long getP999Micros();
+
+  long getMaxMicros();
+}
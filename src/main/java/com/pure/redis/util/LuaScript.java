@@ -0,0 +1,149 @@
+package com.pure.redis.util;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/** lua脚本:启动时SCRIPT LOAD,之后EVALSHA执行,服务端返回NOSCRIPT时自动重新加载 */
+public class LuaScript {
+  private final String script;
+  private final String sha;
+
+  public LuaScript(String script) {
+    this.script = script;
+    this.sha = sha1Hex(script);
+  }
+
+  /**
+   * 从classpath加载脚本
+   *
+   * @param resource 例如 lua/vote_article.lua
+   * @return
+   */
+  public static LuaScript fromResource(String resource) {
+    try (InputStream in = LuaScript.class.getClassLoader().getResourceAsStream(resource)) {
+      if (in == null) {
+        throw new IllegalArgumentException("lua script not found: " + resource);
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        out.write(buf, 0, n);
+      }
+      return new LuaScript(new String(out.toByteArray(), StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new IllegalStateException("failed to read lua script: " + resource, e);
+    }
+  }
+
+  public String getScript() {
+    return script;
+  }
+
+  public String getSha() {
+    return sha;
+  }
+
+  /** 预加载到服务端脚本缓存 */
+  public void load(Jedis jedis) {
+    jedis.scriptLoad(script);
+  }
+
+  /**
+   * EVALSHA执行,NOSCRIPT(服务端重启/SCRIPT FLUSH)时重新加载后重试一次
+   *
+   * @param jedis
+   * @param keys
+   * @param args
+   * @return
+   */
+  public Object eval(Jedis jedis, List<String> keys, List<String> args) {
+    try {
+      return jedis.evalsha(sha, keys, args);
+    } catch (JedisNoScriptException e) {
+      load(jedis);
+      return jedis.evalsha(sha, keys, args);
+    }
+  }
+
+  /**
+   * 在pipeline里执行的一批调用 只发EVALSHA,sync后由resendNoScript处理NOSCRIPT
+   *
+   * @return
+   */
+  public Batch batch() {
+    return new Batch();
+  }
+
+  /** pipeline里的一批EVALSHA 记下每次调用的参数,返回NOSCRIPT的调用在重新加载脚本后单独重发 */
+  public final class Batch {
+    private final List<List<String>> keys = new ArrayList<>();
+    private final List<List<String>> args = new ArrayList<>();
+    private final List<Response<Object>> responses = new ArrayList<>();
+
+    private Batch() {}
+
+    public Response<Object> evalsha(Pipeline pipeline, List<String> keys, List<String> args) {
+      Response<Object> response = pipeline.evalsha(sha, keys, args);
+      this.keys.add(keys);
+      this.args.add(args);
+      this.responses.add(response);
+      return response;
+    }
+
+    /**
+     * pipeline.sync之后调用 有NOSCRIPT时SCRIPT LOAD一次,再用一个pipeline只重发失败的调用
+     *
+     * @param jedis pipeline所属的连接
+     * @return 重发的调用数
+     */
+    public int resendNoScript(Jedis jedis) {
+      List<Integer> failed = new ArrayList<>();
+      for (int i = 0; i < responses.size(); i++) {
+        try {
+          responses.get(i).get();
+        } catch (JedisNoScriptException e) {
+          failed.add(i);
+        } catch (JedisDataException e) {
+          // 其它错误和原来的pipeline写入一样不在这里处理
+        }
+      }
+      if (failed.isEmpty()) {
+        return 0;
+      }
+      load(jedis);
+      Pipeline pipeline = jedis.pipelined();
+      for (int i : failed) {
+        pipeline.evalsha(sha, keys.get(i), args.get(i));
+      }
+      pipeline.sync();
+      return failed.size();
+    }
+  }
+
+  private static String sha1Hex(String script) {
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+      StringBuilder sb = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
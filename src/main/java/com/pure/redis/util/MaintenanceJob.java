@@ -0,0 +1,34 @@
+package com.pure.redis.util;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * 交给MaintenanceRuntime托管的后台任务 每轮从连接池借一个连接,本轮结束就归还
+ *
+ * <p>并发度大于1时同一个实例会被多个线程同时调用,runOnce要能并发执行
+ */
+public interface MaintenanceJob {
+  /**
+   * 执行一轮
+   *
+   * @param jedis 本轮借到的连接,不要保存或close
+   * @return 本轮处理的条数
+   */
+  int runOnce(Jedis jedis);
+
+  /**
+   * 下一轮之前等待的毫秒数
+   *
+   * @param processed 本轮处理的条数
+   * @return 0表示立即执行下一轮
+   */
+  long nextDelayMillis(int processed);
+
+  /** 空闲时提前唤醒任务的信号,没有返回null */
+  default Wakeup wakeup() {
+    return null;
+  }
+
+  /** runtime停止任务后调用,释放任务自己的资源 */
+  default void close() {}
+}
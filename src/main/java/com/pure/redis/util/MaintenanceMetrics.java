@@ -0,0 +1,135 @@
+package com.pure.redis.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 一个后台任务的吞吐,调度延迟和错误 调度延迟是实际开始时间比计划晚了多少 */
+public class MaintenanceMetrics implements MaintenanceMetricsMBean {
+  /** 吞吐按至少这么长的窗口计算 */
+  private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+  private final String name;
+  private final int concurrency;
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicLong runs = new AtomicLong();
+  private final AtomicLong processed = new AtomicLong();
+  private final AtomicLong errors = new AtomicLong();
+  private final AtomicLong maxLagMillis = new AtomicLong();
+  private final LatencyHistogram runTimes = new LatencyHistogram();
+  private volatile String lastError;
+  private volatile long lastLagMillis;
+  private volatile double processedPerSecond;
+  private long windowStart = System.nanoTime();
+  private long windowProcessed;
+
+  MaintenanceMetrics(String name, int concurrency) {
+    this.name = name;
+    this.concurrency = concurrency;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  void started(long lagMillis) {
+    running.incrementAndGet();
+    lastLagMillis = lagMillis;
+    maxLagMillis.accumulateAndGet(lagMillis, Math::max);
+  }
+
+  void finished(long nanos, int count) {
+    running.decrementAndGet();
+    runs.incrementAndGet();
+    processed.addAndGet(count);
+    runTimes.record(nanos / 1000);
+    updateRate(count);
+  }
+
+  void failed(long nanos, Throwable e) {
+    running.decrementAndGet();
+    runs.incrementAndGet();
+    errors.incrementAndGet();
+    runTimes.record(nanos / 1000);
+    lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+    updateRate(0);
+  }
+
+  private synchronized void updateRate(int count) {
+    windowProcessed += count;
+    long now = System.nanoTime();
+    long elapsed = now - windowStart;
+    if (elapsed >= RATE_WINDOW_NANOS) {
+      processedPerSecond = windowProcessed * 1e9 / elapsed;
+      windowStart = now;
+      windowProcessed = 0;
+    }
+  }
+
+  @Override
+  public int getConcurrency() {
+    return concurrency;
+  }
+
+  @Override
+  public int getRunning() {
+    return running.get();
+  }
+
+  @Override
+  public long getRuns() {
+    return runs.get();
+  }
+
+  @Override
+  public long getProcessed() {
+    return processed.get();
+  }
+
+  @Override
+  public double getProcessedPerSecond() {
+    return processedPerSecond;
+  }
+
+  @Override
+  public long getErrors() {
+    return errors.get();
+  }
+
+  @Override
+  public String getLastError() {
+    return lastError;
+  }
+
+  @Override
+  public long getLastLagMillis() {
+    return lastLagMillis;
+  }
+
+  @Override
+  public long getMaxLagMillis() {
+    return maxLagMillis.get();
+  }
+
+  @Override
+  public double getMeanRunMicros() {
+    return runTimes.snapshot().getMean();
+  }
+
+  @Override
+  public long getP99RunMicros() {
+    return runTimes.snapshot().percentile(99);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s runs=%d processed=%d rate=%.1f/s errors=%d lag=%dms maxLag=%dms",
+        name,
+        getRuns(),
+        getProcessed(),
+        getProcessedPerSecond(),
+        getErrors(),
+        getLastLagMillis(),
+        getMaxLagMillis());
+  }
+}
@@ -0,0 +1,26 @@
+package com.pure.redis.util;
+
+/** 后台任务指标的JMX视图 */
+public interface MaintenanceMetricsMBean {
+  int getConcurrency();
+
+  int getRunning();
+
+  long getRuns();
+
+  long getProcessed();
+
+  double getProcessedPerSecond();
+
+  long getErrors();
+
+  String getLastError();
+
+  long getLastLagMillis();
+
+  long getMaxLagMillis();
+
+  double getMeanRunMicros();
+
+  long getP99RunMicros();
+}
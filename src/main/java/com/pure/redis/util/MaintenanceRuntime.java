@@ -0,0 +1,345 @@
+package com.pure.redis.util;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolAbstract;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 后台任务的共享运行时 所有任务跑在一个定时线程池上,每轮从连接池借连接,任务之间不共享Jedis
+ *
+ * <p>每个任务按并发度拆成几条独立的循环,一轮结束后按任务给的延迟重新排期;任务的Wakeup收到信号时把等待中的下一轮提前到现在
+ *
+ * <p>指标注册为JMX MBean com.pure.redis:type=Maintenance,name=xxx
+ */
+@Slf4j
+public class MaintenanceRuntime implements Closeable {
+  private static final String DOMAIN = "com.pure.redis";
+
+  private final JedisPoolAbstract pool;
+  private final ScheduledThreadPoolExecutor executor;
+  private final long errorBackoffMillis;
+  private final long shutdownMillis;
+  private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+  private volatile boolean stopping;
+
+  /**
+   * @param pool 任务借连接的池
+   * @param threads 定时线程数,所有任务共用
+   * @param errorBackoffMillis 一轮失败后等待多久重试
+   * @param shutdownMillis close时最多等待正在执行的轮次多久
+   */
+  public MaintenanceRuntime(
+      JedisPoolAbstract pool, int threads, long errorBackoffMillis, long shutdownMillis) {
+    this.pool = pool;
+    this.errorBackoffMillis = errorBackoffMillis;
+    this.shutdownMillis = shutdownMillis;
+    AtomicInteger seq = new AtomicInteger();
+    this.executor =
+        new ScheduledThreadPoolExecutor(
+            threads,
+            r -> {
+              Thread thread = new Thread(r, "maintenance-" + seq.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.executor.setRemoveOnCancelPolicy(true);
+  }
+
+  /** 用worker池和redis.maintenance.*配置创建 */
+  public static MaintenanceRuntime fromConfig() {
+    RedisConfig config = RedisPools.getConfig();
+    return new MaintenanceRuntime(
+        RedisPools.worker(),
+        config.getInt("maintenance.threads", 4),
+        config.getInt("maintenance.errorBackoffMillis", 1000),
+        config.getInt("maintenance.shutdownMillis", 5000));
+  }
+
+  /**
+   * 开始运行任务
+   *
+   * @param name 任务名,用于指标和日志,不能重复
+   * @param job
+   * @param concurrency 同时执行的轮次数
+   * @return
+   */
+  public MaintenanceMetrics start(String name, MaintenanceJob job, int concurrency) {
+    return start(name, job, concurrency, pool);
+  }
+
+  /**
+   * 开始运行任务 连接从指定的池借,用于分片时连到任务负责的节点
+   *
+   * @param name 任务名,用于指标和日志,不能重复
+   * @param job
+   * @param concurrency 同时执行的轮次数
+   * @param pool
+   * @return
+   */
+  public MaintenanceMetrics start(
+      String name, MaintenanceJob job, int concurrency, JedisPoolAbstract pool) {
+    if (stopping) {
+      throw new IllegalStateException("maintenance runtime is shut down");
+    }
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+    }
+    Task task = new Task(name, job, concurrency, pool);
+    if (tasks.putIfAbsent(name, task) != null) {
+      throw new IllegalArgumentException("maintenance job already running: " + name);
+    }
+    register(task.metrics);
+    Wakeup wakeup = job.wakeup();
+    if (wakeup != null) {
+      wakeup.onSignal(task::wake);
+    }
+    for (Loop loop : task.loops) {
+      loop.schedule(0);
+    }
+    log.info("started maintenance job {} concurrency={}", name, concurrency);
+    return task.metrics;
+  }
+
+  /**
+   * 停止一个任务 正在执行的轮次会跑完,不再排期下一轮
+   *
+   * @param name
+   */
+  public void stop(String name) {
+    Task task = tasks.remove(name);
+    if (task != null) {
+      task.stop();
+    }
+  }
+
+  /** 立即执行一轮,等于收到一次唤醒 */
+  public void wake(String name) {
+    Task task = tasks.get(name);
+    if (task != null) {
+      task.wake();
+    }
+  }
+
+  public MaintenanceMetrics metrics(String name) {
+    Task task = tasks.get(name);
+    return task == null ? null : task.metrics;
+  }
+
+  public List<MaintenanceMetrics> metrics() {
+    List<MaintenanceMetrics> metrics = new ArrayList<>();
+    tasks.values().forEach(task -> metrics.add(task.metrics));
+    return metrics;
+  }
+
+  /**
+   * 停止所有任务 等待正在执行的轮次最多timeoutMillis,超时后中断并再等最多timeoutMillis
+   *
+   * @param timeoutMillis
+   * @return 是否在时限内全部结束
+   */
+  public boolean shutdown(long timeoutMillis) {
+    stopping = true;
+    List<Task> stopped = new ArrayList<>(tasks.values());
+    tasks.clear();
+    stopped.forEach(Task::cancel);
+    executor.shutdown();
+    boolean clean;
+    try {
+      clean = executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      clean = false;
+    }
+    if (!clean) {
+      log.warn("maintenance jobs still running after {}ms, interrupting", timeoutMillis);
+      executor.shutdownNow();
+      try {
+        executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    // 中断后仍没结束的轮次在结束时自己释放,不关闭还在用的资源
+    stopped.forEach(Task::releaseIfIdle);
+    return clean;
+  }
+
+  @Override
+  public void close() {
+    shutdown(shutdownMillis);
+  }
+
+  private void register(MaintenanceMetrics metrics) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = objectName(metrics.getName());
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(metrics, objectName);
+      }
+    } catch (Exception e) {
+      log.warn("register maintenance mbean {} failed", metrics.getName(), e);
+    }
+  }
+
+  private void unregister(MaintenanceMetrics metrics) {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName = objectName(metrics.getName());
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+    } catch (Exception e) {
+      log.warn("unregister maintenance mbean {} failed", metrics.getName(), e);
+    }
+  }
+
+  private static ObjectName objectName(String name) throws Exception {
+    return new ObjectName(DOMAIN + ":type=Maintenance,name=" + ObjectName.quote(name));
+  }
+
+  private final class Task {
+    private final String name;
+    private final MaintenanceJob job;
+    private final JedisPoolAbstract pool;
+    private final MaintenanceMetrics metrics;
+    private final List<Loop> loops = new ArrayList<>();
+    private final AtomicBoolean released = new AtomicBoolean();
+    private volatile boolean stopped;
+
+    Task(String name, MaintenanceJob job, int concurrency, JedisPoolAbstract pool) {
+      this.name = name;
+      this.job = job;
+      this.pool = pool;
+      this.metrics = new MaintenanceMetrics(name, concurrency);
+      for (int i = 0; i < concurrency; i++) {
+        loops.add(new Loop(this));
+      }
+    }
+
+    void wake() {
+      loops.forEach(Loop::wake);
+    }
+
+    void cancel() {
+      stopped = true;
+      loops.forEach(Loop::cancel);
+    }
+
+    void stop() {
+      cancel();
+      releaseIfIdle();
+    }
+
+    /** 正在执行的轮次结束后再释放,避免close掉还在用的资源 由最后结束的轮次调用 */
+    void releaseIfIdle() {
+      for (Loop loop : loops) {
+        if (loop.isRunning()) {
+          return;
+        }
+      }
+      release();
+    }
+
+    private void release() {
+      if (!released.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        job.close();
+      } catch (Exception e) {
+        log.warn("close maintenance job {} failed", name, e);
+      }
+      unregister(metrics);
+    }
+  }
+
+  /** 任务的一条循环 同一时刻最多有一轮在执行或等待 */
+  private final class Loop implements Runnable {
+    private final Task task;
+    private ScheduledFuture<?> next;
+    private long dueNanos;
+    private boolean running;
+    /** 执行期间收到唤醒,本轮结束后立即再执行 */
+    private boolean woken;
+
+    Loop(Task task) {
+      this.task = task;
+    }
+
+    synchronized void schedule(long delayMillis) {
+      if (task.stopped || stopping) {
+        return;
+      }
+      dueNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+      try {
+        next = executor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        // 和shutdown并发,不再排期
+      }
+    }
+
+    synchronized void wake() {
+      if (running) {
+        woken = true;
+      } else if (next != null && next.cancel(false)) {
+        schedule(0);
+      }
+    }
+
+    synchronized void cancel() {
+      if (next != null) {
+        next.cancel(false);
+      }
+    }
+
+    synchronized boolean isRunning() {
+      return running;
+    }
+
+    @Override
+    public void run() {
+      synchronized (this) {
+        if (task.stopped) {
+          return;
+        }
+        running = true;
+        woken = false;
+      }
+      long start = System.nanoTime();
+      task.metrics.started(Math.max(TimeUnit.NANOSECONDS.toMillis(start - dueNanos), 0));
+      long delay;
+      try (Jedis jedis = task.pool.getResource()) {
+        int processed = RedisMetrics.time(task.name, () -> task.job.runOnce(jedis));
+        task.metrics.finished(System.nanoTime() - start, processed);
+        delay = task.job.nextDelayMillis(processed);
+      } catch (Throwable e) {
+        // Error也要走到下面复位running并重新排期,否则这条循环就停了
+        task.metrics.failed(System.nanoTime() - start, e);
+        log.warn("maintenance job {} failed, retrying in {}ms", task.name, errorBackoffMillis, e);
+        delay = errorBackoffMillis;
+      }
+      synchronized (this) {
+        running = false;
+        schedule(woken ? 0 : delay);
+      }
+      if (task.stopped) {
+        task.releaseIfIdle();
+      }
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.pure.redis.util;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolAbstract;
+import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.exceptions.JedisException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带名字和统计的连接池
+ *
+ * <p>jedis 3.3的JedisPool没有接收连接工厂的构造器,继承它只能先建一个默认池再替换,这里直接继承JedisPoolAbstract,
+ * 用选好的工厂只建一次池;归还连接的逻辑与JedisPool一致
+ */
+public class ManagedJedisPool extends JedisPoolAbstract {
+  private final String name;
+  private final int minIdle;
+  private final AtomicLong exhausted = new AtomicLong();
+
+  ManagedJedisPool(String name, JedisPoolConfig poolConfig, RedisConfig config) {
+    this(name, poolConfig, config, config.getHost(), config.getPort());
+  }
+
+  ManagedJedisPool(
+      String name, JedisPoolConfig poolConfig, RedisConfig config, String host, int port) {
+    // 开启指标时建记录命令延迟的连接
+    super(
+        poolConfig,
+        new InstrumentedJedisFactory(host, port, config, name, RedisMetrics.isEnabled()));
+    this.name = name;
+    this.minIdle = poolConfig.getMinIdle();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public Jedis getResource() {
+    Jedis jedis;
+    try {
+      jedis = super.getResource();
+    } catch (JedisExhaustedPoolException e) {
+      exhausted.incrementAndGet();
+      throw e;
+    }
+    // close()时归还到这个池
+    jedis.setDataSource(this);
+    return jedis;
+  }
+
+  @Override
+  protected void returnResource(Jedis resource) {
+    if (resource == null) {
+      return;
+    }
+    try {
+      resource.resetState();
+      returnResourceObject(resource);
+    } catch (Exception e) {
+      returnBrokenResource(resource);
+      throw new JedisException("Resource is returned to the pool as broken", e);
+    }
+  }
+
+  @Override
+  protected void returnBrokenResource(Jedis resource) {
+    if (resource != null) {
+      returnBrokenResourceObject(resource);
+    }
+  }
+
+  /** 预热:建立minIdle个连接,并确认都能用 */
+  public void warmUp() {
+    List<Jedis> borrowed = new ArrayList<>(minIdle);
+    try {
+      for (int i = 0; i < minIdle; i++) {
+        Jedis jedis = getResource();
+        borrowed.add(jedis);
+        jedis.ping();
+      }
+    } finally {
+      borrowed.forEach(Jedis::close);
+    }
+  }
+
+  public PoolStats stats() {
+    return new PoolStats(
+        name,
+        getNumActive(),
+        getNumIdle(),
+        getNumWaiters(),
+        getMeanBorrowWaitTimeMillis(),
+        getMaxBorrowWaitTimeMillis(),
+        exhausted.get());
+  }
+}
@@ -0,0 +1,123 @@
+package com.pure.redis.util;
+
+/**
+ * 流式MurmurHash3 x64 128位 按UTF-16LE逐个char输入,不需要先拼出完整字符串
+ *
+ * <p>非线程安全,每次计算新建一个或reset后复用
+ */
+public final class Murmur3 {
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private long h1;
+  private long h2;
+  private long k1;
+  private long k2;
+  /** 当前16字节块内已写入的字节数 */
+  private int pos;
+  private long length;
+
+  public Murmur3 reset() {
+    h1 = h2 = k1 = k2 = 0;
+    pos = 0;
+    length = 0;
+    return this;
+  }
+
+  public Murmur3 putChar(char c) {
+    if (pos < 8) {
+      k1 |= ((long) c) << (pos * 8);
+    } else {
+      k2 |= ((long) c) << ((pos - 8) * 8);
+    }
+    pos += 2;
+    length += 2;
+    if (pos == 16) {
+      mixBlock();
+    }
+    return this;
+  }
+
+  /**
+   * 输入s[from, to)
+   *
+   * @param s
+   * @param from
+   * @param to
+   * @return
+   */
+  public Murmur3 putChars(CharSequence s, int from, int to) {
+    for (int i = from; i < to; i++) {
+      putChar(s.charAt(i));
+    }
+    return this;
+  }
+
+  /** 结束计算,返回32位十六进制串 */
+  public String toHex() {
+    finish();
+    char[] out = new char[32];
+    writeHex(out, 0, h1);
+    writeHex(out, 16, h2);
+    return new String(out);
+  }
+
+  private void mixBlock() {
+    h1 ^= mixK1(k1);
+    h1 = Long.rotateLeft(h1, 27);
+    h1 += h2;
+    h1 = h1 * 5 + 0x52dce729;
+
+    h2 ^= mixK2(k2);
+    h2 = Long.rotateLeft(h2, 31);
+    h2 += h1;
+    h2 = h2 * 5 + 0x38495ab5;
+
+    k1 = k2 = 0;
+    pos = 0;
+  }
+
+  private void finish() {
+    if (pos > 0) {
+      h1 ^= mixK1(k1);
+      h2 ^= mixK2(k2);
+    }
+    h1 ^= length;
+    h2 ^= length;
+    h1 += h2;
+    h2 += h1;
+    h1 = fmix(h1);
+    h2 = fmix(h2);
+    h1 += h2;
+    h2 += h1;
+  }
+
+  private static long mixK1(long k) {
+    k *= C1;
+    k = Long.rotateLeft(k, 31);
+    return k * C2;
+  }
+
+  private static long mixK2(long k) {
+    k *= C2;
+    k = Long.rotateLeft(k, 33);
+    return k * C1;
+  }
+
+  private static long fmix(long k) {
+    k ^= k >>> 33;
+    k *= 0xff51afd7ed558ccdL;
+    k ^= k >>> 33;
+    k *= 0xc4ceb9fe1a85ec53L;
+    k ^= k >>> 33;
+    return k;
+  }
+
+  private static void writeHex(char[] out, int offset, long v) {
+    for (int i = 15; i >= 0; i--) {
+      out[offset + i] = HEX[(int) (v & 0xF)];
+      v >>>= 4;
+    }
+  }
+}
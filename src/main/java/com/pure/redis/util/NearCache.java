@@ -0,0 +1,225 @@
+package com.pure.redis.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+/**
+ * 进程内L1缓存 容量和TTL双重限制,按LRU淘汰
+ *
+ * <p>每个条目的过期时间不超过写入时给定的ttl,调用方传入redis剩余TTL即可保证不会比redis里的副本更旧
+ *
+ * <p>按key的hash分成多段,每段各自加锁、各自按LRU淘汰,并发访问不会都排在一把锁上;
+ * 淘汰只在段内按最久未访问,整体是近似LRU。容量小的缓存段数少,不足128条时只有一段
+ */
+public class NearCache<V> {
+  /** 默认最多分的段数 */
+  private static final int MAX_SEGMENTS = 16;
+  /** 每段至少的条目数,段太小时LRU偏差大 */
+  private static final int MIN_SEGMENT_SIZE = 64;
+
+  private final long maxTtlNanos;
+  private final Segment<V>[] segments;
+
+  /**
+   * @param maxSize 最大条目数
+   * @param maxTtlSeconds 条目最长存活时间
+   */
+  public NearCache(int maxSize, int maxTtlSeconds) {
+    this(maxSize, maxTtlSeconds, defaultSegments(maxSize));
+  }
+
+  /**
+   * @param maxSize 最大条目数,平均分到各段
+   * @param maxTtlSeconds 条目最长存活时间
+   * @param segments 段数,取不小于它的2的幂,不超过maxSize
+   */
+  @SuppressWarnings("unchecked")
+  public NearCache(int maxSize, int maxTtlSeconds, int segments) {
+    if (maxSize <= 0 || maxTtlSeconds <= 0 || segments <= 0) {
+      throw new IllegalArgumentException("maxSize, maxTtlSeconds and segments must be positive");
+    }
+    int count = 1;
+    while (count < segments && count * 2 <= maxSize) {
+      count *= 2;
+    }
+    this.maxTtlNanos = TimeUnit.SECONDS.toNanos(maxTtlSeconds);
+    this.segments = new Segment[count];
+    for (int i = 0; i < count; i++) {
+      this.segments[i] = new Segment<>(maxSize / count + (i < maxSize % count ? 1 : 0));
+    }
+  }
+
+  private static int defaultSegments(int maxSize) {
+    return Math.max(1, Math.min(MAX_SEGMENTS, maxSize / MIN_SEGMENT_SIZE));
+  }
+
+  private Segment<V> segment(String key) {
+    int h = key.hashCode();
+    return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+  }
+
+  public V get(String key) {
+    long now = System.nanoTime();
+    Segment<V> segment = segment(key);
+    synchronized (segment) {
+      Entry<V> entry = segment.get(key);
+      if (entry == null) {
+        segment.misses++;
+        return null;
+      }
+      if (entry.expireAt - now <= 0) {
+        segment.remove(key);
+        segment.expirations++;
+        segment.misses++;
+        return null;
+      }
+      segment.hits++;
+      return entry.value;
+    }
+  }
+
+  /**
+   * 写入,ttl取入参和maxTtl的较小值
+   *
+   * @param key
+   * @param value
+   * @param ttlSeconds 剩余有效期,<=0不缓存
+   */
+  public void put(String key, V value, long ttlSeconds) {
+    if (value == null || ttlSeconds <= 0) {
+      return;
+    }
+    long ttl = Math.min(TimeUnit.SECONDS.toNanos(ttlSeconds), maxTtlNanos);
+    Entry<V> entry = new Entry<>(value, System.nanoTime() + ttl);
+    Segment<V> segment = segment(key);
+    synchronized (segment) {
+      segment.put(key, entry);
+    }
+  }
+
+  public void invalidate(String key) {
+    Segment<V> segment = segment(key);
+    synchronized (segment) {
+      segment.remove(key);
+    }
+  }
+
+  /** 清理已过期条目 逐段加锁 */
+  public void purgeExpired() {
+    long now = System.nanoTime();
+    for (Segment<V> segment : segments) {
+      synchronized (segment) {
+        Iterator<Entry<V>> it = segment.values().iterator();
+        while (it.hasNext()) {
+          if (it.next().expireAt - now <= 0) {
+            it.remove();
+            segment.expirations++;
+          }
+        }
+      }
+    }
+  }
+
+  /** 段数 */
+  public int segments() {
+    return segments.length;
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment<V> segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public long getHits() {
+    return sum(segment -> segment.hits);
+  }
+
+  public long getMisses() {
+    return sum(segment -> segment.misses);
+  }
+
+  public long getEvictions() {
+    return sum(segment -> segment.evictions);
+  }
+
+  public long getExpirations() {
+    return sum(segment -> segment.expirations);
+  }
+
+  /** 各段计数之和 */
+  private long sum(ToLongFunction<Segment<V>> stat) {
+    long total = 0;
+    for (Segment<V> segment : segments) {
+      synchronized (segment) {
+        total += stat.applyAsLong(segment);
+      }
+    }
+    return total;
+  }
+
+  public double hitRate() {
+    long h = getHits();
+    long total = h + getMisses();
+    return total == 0 ? 0 : (double) h / total;
+  }
+
+  @Override
+  public String toString() {
+    return "NearCache{size="
+        + size()
+        + ", segments="
+        + segments.length
+        + ", hits="
+        + getHits()
+        + ", misses="
+        + getMisses()
+        + ", evictions="
+        + getEvictions()
+        + ", expirations="
+        + getExpirations()
+        + "}";
+  }
+
+  /** 一段:按访问顺序排列,超过容量时淘汰最久未访问的条目 计数只在持有这段的锁时修改 */
+  private static final class Segment<V> extends LinkedHashMap<String, Entry<V>> {
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+
+    private Segment(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+      if (size() > maxSize) {
+        evictions++;
+        return true;
+      }
+      return false;
+    }
+  }
+
+  private static final class Entry<V> {
+    private final V value;
+    private final long expireAt;
+
+    private Entry(V value, long expireAt) {
+      this.value = value;
+      this.expireAt = expireAt;
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package com.pure.redis.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/** 连接池状态快照 */
+@Getter
+@ToString
+@AllArgsConstructor
+public class PoolStats {
+  private final String name;
+  private final int active;
+  private final int idle;
+  private final int waiters;
+  private final long meanBorrowWaitMillis;
+  private final long maxBorrowWaitMillis;
+  /** 借不到连接(超过maxWaitMillis)的次数 */
+  private final long exhausted;
+}
@@ -0,0 +1,94 @@
+package com.pure.redis.util;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * redis连接配置 依次读取classpath下的redis.properties、-Dredis.config指定的文件、-Dredis.*系统属性,后者覆盖前者
+ *
+ * <p>连接池参数按池名配置:redis.pool.&lt;name&gt;.maxTotal,未配置时取redis.pool.maxTotal
+ */
+public class RedisConfig {
+  private static final String RESOURCE = "redis.properties";
+  private static final String PREFIX = "redis.";
+
+  private final Properties props;
+
+  private RedisConfig(Properties props) {
+    this.props = props;
+  }
+
+  public static RedisConfig load() {
+    Properties props = new Properties();
+    try (InputStream in = RedisConfig.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+      if (in != null) {
+        props.load(in);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("failed to read " + RESOURCE, e);
+    }
+    String file = System.getProperty("redis.config");
+    if (!StringUtils.isBlank(file)) {
+      try (InputStream in = new FileInputStream(file)) {
+        props.load(in);
+      } catch (IOException e) {
+        throw new IllegalStateException("failed to read " + file, e);
+      }
+    }
+    for (String name : System.getProperties().stringPropertyNames()) {
+      if (name.startsWith(PREFIX)) {
+        props.setProperty(name, System.getProperty(name));
+      }
+    }
+    return new RedisConfig(props);
+  }
+
+  public String getHost() {
+    return getString("host", "localhost");
+  }
+
+  public int getPort() {
+    return getInt("port", 6379);
+  }
+
+  public int getDatabase() {
+    return getInt("database", 0);
+  }
+
+  public String getPassword() {
+    return StringUtils.defaultIfBlank(getString("password", null), null);
+  }
+
+  public int getConnectionTimeout() {
+    return getInt("connectionTimeout", 2000);
+  }
+
+  public int getSoTimeout() {
+    return getInt("soTimeout", 2000);
+  }
+
+  /**
+   * 连接池参数
+   *
+   * @param pool 池名
+   * @param key 例如maxTotal
+   * @param def 默认值
+   * @return
+   */
+  public int getPoolInt(String pool, String key, int def) {
+    return getInt("pool." + pool + "." + key, getInt("pool." + key, def));
+  }
+
+  public String getString(String key, String def) {
+    return props.getProperty(PREFIX + key, def);
+  }
+
+  public int getInt(String key, int def) {
+    String value = props.getProperty(PREFIX + key);
+    return StringUtils.isBlank(value) ? def : Integer.parseInt(value.trim());
+  }
+}
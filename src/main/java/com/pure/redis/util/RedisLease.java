@@ -0,0 +1,37 @@
+package com.pure.redis.util;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.SetParams;
+
+import java.util.Collections;
+import java.util.UUID;
+
+/** 跨进程的短租约 SET NX PX获取,过期自动释放,只有持有者能提前释放 */
+public class RedisLease {
+  private static final LuaScript RELEASE_SCRIPT = LuaScript.fromResource("lua/release_lease.lua");
+
+  /**
+   * 尝试获取租约
+   *
+   * @param jedis
+   * @param key
+   * @param leaseMillis
+   * @return 持有者token,未获取到返回null
+   */
+  public static String tryAcquire(Jedis jedis, String key, long leaseMillis) {
+    String token = UUID.randomUUID().toString();
+    String status = jedis.set(key, token, SetParams.setParams().nx().px(leaseMillis));
+    return "OK".equals(status) ? token : null;
+  }
+
+  /**
+   * 释放租约,租约已过期被别人拿走时不做任何事
+   *
+   * @param jedis
+   * @param key
+   * @param token
+   */
+  public static void release(Jedis jedis, String key, String token) {
+    RELEASE_SCRIPT.eval(jedis, Collections.singletonList(key), Collections.singletonList(token));
+  }
+}
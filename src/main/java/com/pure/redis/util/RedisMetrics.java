@@ -0,0 +1,179 @@
+package com.pure.redis.util;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.commands.ProtocolCommand;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Redis延迟指标 按业务操作(updateToken,voteArticle...)和按Redis命令(GET,EVALSHA...)分别统计
+ *
+ * <p>命令级统计由连接池里的InstrumentedJedis记录;每个指标注册为JMX MBean
+ * com.pure.redis:type=Latency,scope=operation|command,name=xxx,并可定期输出到日志
+ *
+ * <p>redis.metrics.enabled=false时不记录任何东西
+ */
+@Slf4j
+public class RedisMetrics {
+  private static final String DOMAIN = "com.pure.redis";
+  private static final boolean ENABLED =
+      Boolean.parseBoolean(RedisPools.getConfig().getString("metrics.enabled", "true"));
+
+  private static final ConcurrentHashMap<String, LatencyMetric> OPERATIONS =
+      new ConcurrentHashMap<>();
+  private static final ConcurrentHashMap<ProtocolCommand, LatencyMetric> COMMANDS =
+      new ConcurrentHashMap<>();
+
+  private static ScheduledExecutorService logger;
+
+  public static boolean isEnabled() {
+    return ENABLED;
+  }
+
+  /**
+   * 计时执行一个业务操作 抛异常记为错误
+   *
+   * @param operation 操作名
+   * @param action
+   * @return
+   */
+  public static <T> T time(String operation, Supplier<T> action) {
+    if (!ENABLED) {
+      return action.get();
+    }
+    long start = System.nanoTime();
+    boolean error = true;
+    try {
+      T result = action.get();
+      error = false;
+      return result;
+    } finally {
+      operation(operation).record(System.nanoTime() - start, error);
+    }
+  }
+
+  public static void run(String operation, Runnable action) {
+    time(
+        operation,
+        () -> {
+          action.run();
+          return null;
+        });
+  }
+
+  public static LatencyMetric operation(String name) {
+    LatencyMetric metric = OPERATIONS.get(name);
+    return metric != null ? metric : OPERATIONS.computeIfAbsent(name, n -> create("operation", n));
+  }
+
+  public static LatencyMetric command(ProtocolCommand command) {
+    LatencyMetric metric = COMMANDS.get(command);
+    return metric != null
+        ? metric
+        : COMMANDS.computeIfAbsent(command, c -> create("command", commandName(c)));
+  }
+
+  /** 所有指标的当前快照,key为operation:xxx或command:XXX */
+  public static Map<String, LatencyHistogram.Snapshot> snapshot() {
+    Map<String, LatencyHistogram.Snapshot> snapshot = new TreeMap<>();
+    OPERATIONS.forEach((name, metric) -> snapshot.put("operation:" + name, metric.snapshot()));
+    COMMANDS.values()
+        .forEach(metric -> snapshot.put("command:" + metric.getName(), metric.snapshot()));
+    return snapshot;
+  }
+
+  /**
+   * 定期把区间内的分布输出到日志
+   *
+   * @param periodSeconds 间隔,小于等于0不输出
+   */
+  public static synchronized void startLogging(int periodSeconds) {
+    if (!ENABLED || periodSeconds <= 0 || logger != null) {
+      return;
+    }
+    logger =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "redis-metrics-log");
+              thread.setDaemon(true);
+              return thread;
+            });
+    Map<String, LatencyHistogram.Snapshot> previous = new HashMap<>();
+    logger.scheduleAtFixedRate(
+        () -> logInterval(previous), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+  }
+
+  public static synchronized void stopLogging() {
+    if (logger != null) {
+      logger.shutdownNow();
+      logger = null;
+    }
+  }
+
+  private static void logInterval(Map<String, LatencyHistogram.Snapshot> previous) {
+    try {
+      List<String> lines = new ArrayList<>();
+      snapshot()
+          .forEach(
+              (name, current) -> {
+                LatencyHistogram.Snapshot earlier = previous.put(name, current);
+                LatencyHistogram.Snapshot interval =
+                    earlier == null ? current : current.since(earlier);
+                if (interval.getCount() > 0) {
+                  lines.add(format(name, interval));
+                }
+              });
+      lines.forEach(line -> log.info("redis latency {}", line));
+    } catch (RuntimeException e) {
+      log.warn("redis latency dump failed", e);
+    }
+  }
+
+  private static String format(String name, LatencyHistogram.Snapshot s) {
+    return String.format(
+        "%s count=%d mean=%.0fus p50=%dus p90=%dus p99=%dus p99.9=%dus max=%dus",
+        name,
+        s.getCount(),
+        s.getMean(),
+        s.percentile(50),
+        s.percentile(90),
+        s.percentile(99),
+        s.percentile(99.9),
+        s.getMax());
+  }
+
+  private static String commandName(ProtocolCommand command) {
+    return command instanceof Enum
+        ? ((Enum<?>) command).name()
+        : new String(command.getRaw(), StandardCharsets.UTF_8);
+  }
+
+  private static LatencyMetric create(String scope, String name) {
+    LatencyMetric metric = new LatencyMetric(name);
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName objectName =
+          new ObjectName(
+              DOMAIN + ":type=Latency,scope=" + scope + ",name=" + ObjectName.quote(name));
+      if (!server.isRegistered(objectName)) {
+        server.registerMBean(metric, objectName);
+      }
+    } catch (Exception e) {
+      log.warn("register latency mbean {} failed", name, e);
+    }
+    return metric;
+  }
+}
@@ -0,0 +1,120 @@
+package com.pure.redis.util;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内共享的连接池 按名字区分:request给请求线程,worker给后台任务,互不抢连接;分片节点和读副本各自一个池
+ *
+ * <p>池在第一次使用时创建,进程退出时统一关闭,调用方不要自己close
+ */
+@Slf4j
+public class RedisPools {
+  public static final String REQUEST = "request";
+  public static final String WORKER = "worker";
+  public static final String SHARD = "shard";
+  public static final String REPLICA = "replica";
+
+  private static final RedisConfig CONFIG = RedisConfig.load();
+  private static final ConcurrentHashMap<String, ManagedJedisPool> POOLS =
+      new ConcurrentHashMap<>();
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(RedisPools::closeAll, "redis-pools-shutdown"));
+  }
+
+  /** 请求线程用的池 */
+  public static ManagedJedisPool request() {
+    return get(REQUEST);
+  }
+
+  /** 后台任务用的池 */
+  public static ManagedJedisPool worker() {
+    return get(WORKER);
+  }
+
+  public static ManagedJedisPool get(String name) {
+    return POOLS.computeIfAbsent(name, RedisPools::create);
+  }
+
+  /**
+   * 指定节点的池 分片部署时每个节点一个,池参数取redis.pool.shard.*
+   *
+   * @param host
+   * @param port
+   * @return
+   */
+  public static ManagedJedisPool node(String host, int port) {
+    return POOLS.computeIfAbsent(
+        SHARD + "@" + host + ":" + port, name -> create(name, SHARD, host, port));
+  }
+
+  /**
+   * 读副本的池 池参数取redis.pool.replica.*
+   *
+   * @param host
+   * @param port
+   * @return
+   */
+  public static ManagedJedisPool replica(String host, int port) {
+    return POOLS.computeIfAbsent(
+        REPLICA + "@" + host + ":" + port, name -> create(name, REPLICA, host, port));
+  }
+
+  public static RedisConfig getConfig() {
+    return CONFIG;
+  }
+
+  /**
+   * 启动时预热配置里的池,并按redis.metrics.logSeconds开始定期输出延迟指标
+   *
+   * @param names 池名
+   */
+  public static void warmUp(String... names) {
+    for (String name : names) {
+      get(name).warmUp();
+    }
+    RedisMetrics.startLogging(CONFIG.getInt("metrics.logSeconds", 60));
+  }
+
+  public static List<PoolStats> stats() {
+    List<PoolStats> stats = new ArrayList<>();
+    POOLS.values().forEach(pool -> stats.add(pool.stats()));
+    return stats;
+  }
+
+  public static void logStats() {
+    stats().forEach(s -> log.info("redis pool {}", s));
+  }
+
+  static void closeAll() {
+    POOLS.values().forEach(ManagedJedisPool::close);
+    POOLS.clear();
+  }
+
+  private static ManagedJedisPool create(String name) {
+    return create(name, name, CONFIG.getHost(), CONFIG.getPort());
+  }
+
+  private static ManagedJedisPool create(String name, String kind, String host, int port) {
+    JedisPoolConfig poolConfig = new JedisPoolConfig();
+    poolConfig.setMaxTotal(CONFIG.getPoolInt(kind, "maxTotal", 8));
+    poolConfig.setMaxIdle(CONFIG.getPoolInt(kind, "maxIdle", poolConfig.getMaxTotal()));
+    poolConfig.setMinIdle(CONFIG.getPoolInt(kind, "minIdle", 0));
+    poolConfig.setMaxWaitMillis(CONFIG.getPoolInt(kind, "maxWaitMillis", 1000));
+    ManagedJedisPool pool = new ManagedJedisPool(name, poolConfig, CONFIG, host, port);
+    log.info(
+        "created redis pool {} -> {}:{}/{} maxTotal={} minIdle={}",
+        name,
+        host,
+        port,
+        CONFIG.getDatabase(),
+        poolConfig.getMaxTotal(),
+        poolConfig.getMinIdle());
+    return pool;
+  }
+}
@@ -0,0 +1,341 @@
+package com.pure.redis.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolAbstract;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 读副本路由 指定的读操作发到副本,写和需要读到自己写入的操作留在主库
+ *
+ * <p>后台定期用INFO replication比较主库和副本的复制偏移量,换算成副本落后的毫秒数;落后超过maxLagMillis,
+ * 复制链路断开或读失败的副本暂停使用,没有可用副本时读主库。只用于单主部署,分片部署每个节点各自配置
+ */
+@Slf4j
+public class ReplicaRouter implements Closeable {
+  /** 副本选择方式 */
+  public enum Selection {
+    /** 轮流 */
+    ROUND_ROBIN,
+    /** 最近读延迟最低的 */
+    LEAST_LATENCY
+  }
+
+  /** 延迟滑动平均里新样本的权重 */
+  private static final double EWMA_ALPHA = 0.2;
+  /** 主库偏移量历史最多保留的条数 */
+  private static final int MAX_SAMPLES = 1024;
+
+  private static final ThreadLocal<int[]> PINNED = ThreadLocal.withInitial(() -> new int[1]);
+
+  private final JedisPoolAbstract primary;
+  private final List<Replica> replicas;
+  private final Selection selection;
+  private final long maxLagMillis;
+  private final AtomicInteger next = new AtomicInteger();
+  /** 主库复制偏移量的历史,新的在前 */
+  private final Deque<long[]> samples = new ArrayDeque<>();
+  private final ScheduledExecutorService checker;
+
+  /**
+   * @param primary 主库连接池,用于检查复制偏移量
+   * @param replicas 副本连接池
+   * @param selection 副本选择方式
+   * @param maxLagMillis 副本最多落后主库多少毫秒仍可读
+   * @param checkMillis 检查复制状态的间隔,也是落后时间的精度
+   */
+  public ReplicaRouter(
+      JedisPoolAbstract primary,
+      List<? extends JedisPoolAbstract> replicas,
+      Selection selection,
+      long maxLagMillis,
+      long checkMillis) {
+    this.primary = primary;
+    List<Replica> list = new ArrayList<>(replicas.size());
+    for (int i = 0; i < replicas.size(); i++) {
+      list.add(new Replica("replica-" + i, replicas.get(i)));
+    }
+    this.replicas = Collections.unmodifiableList(list);
+    this.selection = selection;
+    this.maxLagMillis = maxLagMillis;
+    this.checker =
+        Executors.newSingleThreadScheduledExecutor(
+            r -> {
+              Thread thread = new Thread(r, "replica-check");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.checker.scheduleWithFixedDelay(this::check, 0, checkMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * 读取redis.replicas(逗号分隔的host:port)和redis.replica.*
+   *
+   * @return 没有配置副本时返回null,所有读走主库
+   */
+  public static ReplicaRouter fromConfig() {
+    RedisConfig config = RedisPools.getConfig();
+    String hosts = config.getString("replicas", null);
+    if (StringUtils.isBlank(hosts)) {
+      return null;
+    }
+    List<JedisPoolAbstract> pools = new ArrayList<>();
+    for (String node : StringUtils.split(hosts, ',')) {
+      String hostPort = node.trim();
+      int colon = hostPort.lastIndexOf(':');
+      pools.add(
+          RedisPools.replica(
+              hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1))));
+    }
+    String selection = config.getString("replica.selection", "roundRobin");
+    return new ReplicaRouter(
+        RedisPools.request(),
+        pools,
+        "leastLatency".equalsIgnoreCase(selection)
+            ? Selection.LEAST_LATENCY
+            : Selection.ROUND_ROBIN,
+        config.getInt("replica.maxLagMillis", 2000),
+        config.getInt("replica.checkMillis", 500));
+  }
+
+  /**
+   * 在选中的副本上执行读操作 当前线程固定在主库,没有可用副本或副本读失败时用主库连接执行
+   *
+   * <p>副本连接池固定在redis.database,调用方连接SELECT了别的库时先切到同一个库,归还后由连接池切回
+   *
+   * @param primaryJedis 调用方手里的主库连接
+   * @param read 只能包含读命令
+   * @param <T>
+   * @return
+   */
+  public <T> T read(Jedis primaryJedis, Function<Jedis, T> read) {
+    Replica replica = PINNED.get()[0] > 0 ? null : choose();
+    if (replica == null) {
+      return read.apply(primaryJedis);
+    }
+    long start = System.nanoTime();
+    try (Jedis jedis = replica.pool.getResource()) {
+      if (jedis.getDB() != primaryJedis.getDB()) {
+        jedis.select(primaryJedis.getDB());
+      }
+      T result = read.apply(jedis);
+      replica.reads.incrementAndGet();
+      replica.record(System.nanoTime() - start);
+      return result;
+    } catch (JedisException e) {
+      // 副本不可用或复制断开(MASTERDOWN/LOADING),下次检查前不再使用
+      replica.healthy = false;
+      replica.failures.incrementAndGet();
+      log.warn("read from {} failed, falling back to primary: {}", replica.name, e.getMessage());
+      return read.apply(primaryJedis);
+    }
+  }
+
+  /**
+   * 当前线程接下来的读都走主库,用于读自己刚写入的数据 可嵌套,用try-with-resources关闭
+   *
+   * @return
+   */
+  public Pin pinPrimary() {
+    PINNED.get()[0]++;
+    return new Pin();
+  }
+
+  public List<Replica> getReplicas() {
+    return replicas;
+  }
+
+  public Selection getSelection() {
+    return selection;
+  }
+
+  @Override
+  public void close() {
+    checker.shutdownNow();
+  }
+
+  private Replica choose() {
+    Replica chosen = null;
+    if (selection == Selection.LEAST_LATENCY) {
+      for (Replica replica : replicas) {
+        if (replica.healthy && (chosen == null || replica.ewmaMicros < chosen.ewmaMicros)) {
+          chosen = replica;
+        }
+      }
+      return chosen;
+    }
+    int size = replicas.size();
+    int start = Math.floorMod(next.getAndIncrement(), size);
+    for (int i = 0; i < size; i++) {
+      Replica replica = replicas.get((start + i) % size);
+      if (replica.healthy) {
+        return replica;
+      }
+    }
+    return null;
+  }
+
+  /** 先取主库偏移量,再逐个检查副本 */
+  void check() {
+    long now = System.currentTimeMillis();
+    long primaryOffset;
+    try (Jedis jedis = primary.getResource()) {
+      primaryOffset = Long.parseLong(info(jedis.info("replication"), "master_repl_offset", "-1"));
+    } catch (JedisException | NumberFormatException e) {
+      log.warn("replication check on primary failed: {}", e.getMessage());
+      replicas.forEach(replica -> replica.healthy = false);
+      return;
+    }
+    samples.addFirst(new long[] {now, primaryOffset});
+    while (samples.size() > MAX_SAMPLES || samples.peekLast()[0] < now - maxLagMillis * 2) {
+      samples.removeLast();
+    }
+    for (Replica replica : replicas) {
+      checkReplica(replica, primaryOffset, now);
+    }
+  }
+
+  private void checkReplica(Replica replica, long primaryOffset, long now) {
+    long start = System.nanoTime();
+    String info;
+    try (Jedis jedis = replica.pool.getResource()) {
+      info = jedis.info("replication");
+    } catch (JedisException e) {
+      replica.markDown("unreachable: " + e.getMessage());
+      return;
+    }
+    replica.record(System.nanoTime() - start);
+    if (!"slave".equals(info(info, "role", ""))
+        || !"up".equals(info(info, "master_link_status", ""))) {
+      replica.markDown("replication link down");
+      return;
+    }
+    long offset = Long.parseLong(info(info, "slave_repl_offset", "-1"));
+    long lag = offset >= primaryOffset ? 0 : lagMillis(offset, now);
+    replica.lagMillis = lag;
+    boolean healthy = lag <= maxLagMillis;
+    if (healthy != replica.healthy) {
+      log.info("{} {} lag={}ms", replica.name, healthy ? "in rotation" : "out of rotation", lag);
+    }
+    replica.healthy = healthy;
+  }
+
+  /** 副本拥有主库在某个时刻之前的全部写入,落后时间就是从那个时刻到现在 */
+  private long lagMillis(long replicaOffset, long now) {
+    Iterator<long[]> it = samples.iterator();
+    while (it.hasNext()) {
+      long[] sample = it.next();
+      if (sample[1] <= replicaOffset) {
+        return now - sample[0];
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+
+  private static String info(String info, String key, String def) {
+    String prefix = key + ":";
+    for (String line : info.split("\r\n")) {
+      if (line.startsWith(prefix)) {
+        return line.substring(prefix.length()).trim();
+      }
+    }
+    return def;
+  }
+
+  /** 固定读主库的范围 */
+  public static final class Pin implements AutoCloseable {
+    private boolean closed;
+
+    private Pin() {}
+
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        PINNED.get()[0]--;
+      }
+    }
+  }
+
+  /** 一个副本的状态 */
+  public static final class Replica {
+    private final String name;
+    private final JedisPoolAbstract pool;
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean healthy;
+    private volatile long lagMillis = Long.MAX_VALUE;
+    private volatile double ewmaMicros;
+
+    Replica(String name, JedisPoolAbstract pool) {
+      this.name = name;
+      this.pool = pool;
+    }
+
+    /** 读和健康检查的往返时间都计入延迟 */
+    void record(long nanos) {
+      double micros = nanos / 1000.0;
+      double current = ewmaMicros;
+      ewmaMicros = current == 0 ? micros : current + EWMA_ALPHA * (micros - current);
+    }
+
+    void markDown(String reason) {
+      if (healthy) {
+        log.info("{} out of rotation: {}", name, reason);
+      }
+      healthy = false;
+      lagMillis = Long.MAX_VALUE;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isHealthy() {
+      return healthy;
+    }
+
+    public long getLagMillis() {
+      return lagMillis;
+    }
+
+    public double getLatencyMicros() {
+      return ewmaMicros;
+    }
+
+    public long getReads() {
+      return reads.get();
+    }
+
+    public long getFailures() {
+      return failures.get();
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s healthy=%s lag=%sms latency=%.0fus reads=%d failures=%d",
+          name,
+          healthy,
+          lagMillis == Long.MAX_VALUE ? "?" : String.valueOf(lagMillis),
+          ewmaMicros,
+          getReads(),
+          getFailures());
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package com.pure.redis.util;
+
+import org.apache.commons.lang3.StringUtils;
+import redis.clients.jedis.JedisPoolAbstract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 分区到节点的路由 key里带hash tag的分区号,同一分区的key总在同一节点
+ *
+ * <p>分区数固定,节点按分区号取模;加节点时只需迁移分区,key名不变。放到Redis Cluster上时同一分区的key也在同一slot
+ */
+public class ShardRouter {
+  private final List<JedisPoolAbstract> nodes;
+  private final int partitions;
+
+  /**
+   * @param nodes 节点连接池
+   * @param partitions 分区数
+   */
+  public ShardRouter(List<? extends JedisPoolAbstract> nodes, int partitions) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("no shard nodes");
+    }
+    if (partitions < nodes.size()) {
+      throw new IllegalArgumentException("partitions must be >= nodes");
+    }
+    this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+    this.partitions = partitions;
+  }
+
+  /** 读取redis.shards和redis.shard.partitions,未配置redis.shards时退化成单节点 */
+  public static ShardRouter fromConfig() {
+    RedisConfig config = RedisPools.getConfig();
+    String shards = config.getString("shards", null);
+    List<JedisPoolAbstract> nodes = new ArrayList<>();
+    if (StringUtils.isBlank(shards)) {
+      nodes.add(RedisPools.request());
+    } else {
+      for (String node : StringUtils.split(shards, ',')) {
+        String hostPort = node.trim();
+        int colon = hostPort.lastIndexOf(':');
+        nodes.add(
+            RedisPools.node(
+                hostPort.substring(0, colon), Integer.parseInt(hostPort.substring(colon + 1))));
+      }
+    }
+    return new ShardRouter(nodes, config.getInt("shard.partitions", 16));
+  }
+
+  public int size() {
+    return nodes.size();
+  }
+
+  public int partitions() {
+    return partitions;
+  }
+
+  public JedisPoolAbstract node(int partition) {
+    return nodes.get(partition % nodes.size());
+  }
+
+  /** 不分区的全局key(如viewed:)固定放在一个节点上 */
+  public JedisPoolAbstract nodeForKey(String key) {
+    return nodes.get(Math.floorMod(key.hashCode(), nodes.size()));
+  }
+
+  public List<JedisPoolAbstract> getNodes() {
+    return nodes;
+  }
+}
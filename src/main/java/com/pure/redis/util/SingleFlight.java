@@ -0,0 +1,66 @@
+package com.pure.redis.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/** 进程内请求合并:同一个key同时只有一个线程执行加载,其他线程共享结果 */
+public class SingleFlight<V> {
+  private final ConcurrentHashMap<String, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+  /**
+   * 同key并发调用只执行一次loader,其余线程等待同一个结果
+   *
+   * @param key
+   * @param loader
+   * @return
+   */
+  public V execute(String key, Supplier<V> loader) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    CompletableFuture<V> running = calls.putIfAbsent(key, mine);
+    if (running != null) {
+      try {
+        return running.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw e;
+      }
+    }
+    return run(key, mine, loader);
+  }
+
+  /**
+   * 已有同key加载在执行时直接返回null,不等待
+   *
+   * @param key
+   * @param loader
+   * @return loader结果,未执行返回null
+   */
+  public V tryExecute(String key, Supplier<V> loader) {
+    CompletableFuture<V> mine = new CompletableFuture<>();
+    if (calls.putIfAbsent(key, mine) != null) {
+      return null;
+    }
+    return run(key, mine, loader);
+  }
+
+  public boolean isInFlight(String key) {
+    return calls.containsKey(key);
+  }
+
+  private V run(String key, CompletableFuture<V> mine, Supplier<V> loader) {
+    try {
+      V value = loader.get();
+      mine.complete(value);
+      return value;
+    } catch (RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      calls.remove(key, mine);
+    }
+  }
+}
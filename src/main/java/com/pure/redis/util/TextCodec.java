@@ -0,0 +1,33 @@
+package com.pure.redis.util;
+
+import java.nio.charset.StandardCharsets;
+
+/** 文本值(页面等)编解码 UTF-8,超过阈值Deflate压缩,没有格式头的旧值按原始UTF-8读取 */
+public class TextCodec implements Codec<String> {
+  private final int compressThreshold;
+
+  /** @param compressThreshold 超过多少字节压缩,<=0不压缩 */
+  public TextCodec(int compressThreshold) {
+    this.compressThreshold = compressThreshold;
+  }
+
+  @Override
+  public byte[] encode(String value) {
+    return CodecFrames.wrap(
+        CodecFrames.FORMAT_TEXT, value.getBytes(StandardCharsets.UTF_8), compressThreshold);
+  }
+
+  @Override
+  public String decode(byte[] bytes) {
+    if (bytes == null) {
+      return null;
+    }
+    if (!CodecFrames.isFramed(bytes)) {
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+    if (CodecFrames.format(bytes) != CodecFrames.FORMAT_TEXT) {
+      throw new IllegalArgumentException("not a text value: format " + CodecFrames.format(bytes));
+    }
+    return new String(CodecFrames.payload(bytes), StandardCharsets.UTF_8);
+  }
+}
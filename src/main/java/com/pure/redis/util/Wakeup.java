@@ -0,0 +1,149 @@
+package com.pure.redis.util;
+
+import lombok.extern.slf4j.Slf4j;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPoolAbstract;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisException;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 后台任务的唤醒信号 任务空闲时阻塞等待,有新工作时由本进程signal或其他进程往频道PUBLISH唤醒
+ *
+ * <p>订阅占用一个连接;断线重连后补发一次信号,重连期间漏掉的消息不会让任务一直睡下去
+ */
+@Slf4j
+public class Wakeup implements Closeable {
+  private static final long RECONNECT_MILLIS = 1000;
+
+  private final Object lock = new Object();
+  private boolean pending;
+  private volatile boolean closed;
+  private volatile JedisPubSub pubSub;
+  private Thread subscriber;
+  /** 不阻塞等待的使用方,比如MaintenanceRuntime,收到信号时回调 */
+  private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+  /** 只在进程内使用的信号 */
+  public Wakeup() {}
+
+  /**
+   * 订阅频道 收到消息即唤醒
+   *
+   * @param pool 订阅连接从这里借,一直占用到close
+   * @param channel
+   * @return
+   */
+  public static Wakeup subscribe(JedisPoolAbstract pool, String channel) {
+    Wakeup wakeup = new Wakeup();
+    wakeup.pubSub =
+        new JedisPubSub() {
+          @Override
+          public void onMessage(String ch, String message) {
+            wakeup.signal();
+          }
+
+          @Override
+          public void onSubscribe(String ch, int subscribedChannels) {
+            if (wakeup.closed) {
+              unsubscribe();
+            } else {
+              // 订阅之前可能错过了消息
+              wakeup.signal();
+            }
+          }
+        };
+    wakeup.subscriber = new Thread(() -> wakeup.listen(pool, channel), "wakeup-" + channel);
+    wakeup.subscriber.setDaemon(true);
+    wakeup.subscriber.start();
+    return wakeup;
+  }
+
+  /**
+   * 通知订阅了频道的任务
+   *
+   * @param jedis
+   * @param channel
+   */
+  public static void publish(Jedis jedis, String channel) {
+    jedis.publish(channel, "");
+  }
+
+  /** 随pipeline一起发出,不多一次往返 */
+  public static void publish(Pipeline pipeline, String channel) {
+    pipeline.publish(channel, "");
+  }
+
+  public void signal() {
+    synchronized (lock) {
+      pending = true;
+      lock.notifyAll();
+    }
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  /**
+   * 收到信号时回调 在订阅线程或signal的调用线程上执行,不要阻塞
+   *
+   * @param listener
+   */
+  public void onSignal(Runnable listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * 等到有信号或超时 等待之前已经到达的信号会让它立即返回
+   *
+   * @param timeoutMillis
+   * @return 是否因为信号返回
+   * @throws InterruptedException
+   */
+  public boolean await(long timeoutMillis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    synchronized (lock) {
+      while (!pending && !closed) {
+        long left = deadline - System.currentTimeMillis();
+        if (left <= 0) {
+          return false;
+        }
+        lock.wait(left);
+      }
+      pending = false;
+      return true;
+    }
+  }
+
+  private void listen(JedisPoolAbstract pool, String channel) {
+    while (!closed) {
+      try (Jedis jedis = pool.getResource()) {
+        jedis.subscribe(pubSub, channel);
+      } catch (JedisException e) {
+        if (closed) {
+          return;
+        }
+        log.warn("wakeup subscription to {} lost, retrying: {}", channel, e.getMessage());
+        try {
+          Thread.sleep(RECONNECT_MILLIS);
+        } catch (InterruptedException ie) {
+          return;
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    signal();
+    JedisPubSub current = pubSub;
+    if (current != null && current.isSubscribed()) {
+      current.unsubscribe();
+    }
+  }
+}
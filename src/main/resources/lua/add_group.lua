@@ -0,0 +1,21 @@
+-- 文章加入分组,同时写入分组排行,之后分组分页只需范围读取 用到的key全部由KEYS传入
+-- KEYS[1] articleScore:  KEYS[2] postTime:  KEYS[3] articleGroups:<id>
+-- KEYS[4..] 每个分组5个:articleGroup:<组> articleScore:<组> postTime:<组> 两个分组排行的rankVersion:
+-- ARGV[1] article:<id>  ARGV[2..] 分组,和KEYS[4..]按顺序对应
+local score = redis.call('ZSCORE', KEYS[1], ARGV[1])
+local postTime = redis.call('ZSCORE', KEYS[2], ARGV[1])
+for i = 4, #KEYS, 5 do
+  local group = ARGV[2 + (i - 4) / 5]
+  redis.call('SADD', KEYS[i], ARGV[1])
+  redis.call('SADD', KEYS[3], group)
+  if score then
+    redis.call('ZADD', KEYS[i + 1], score, ARGV[1])
+  end
+  if postTime then
+    redis.call('ZADD', KEYS[i + 2], postTime, ARGV[1])
+  end
+  -- 只作废这个分组的排行
+  redis.call('INCR', KEYS[i + 3])
+  redis.call('INCR', KEYS[i + 4])
+end
+return #ARGV - 1
@@ -0,0 +1,22 @@
+-- 按redis已生效的纪元累加浏览量:权重取决于viewed:epoch,不取决于写入节点的时钟
+-- KEYS[1] viewed:  KEYS[2] viewed:epoch
+-- ARGV[1] 浏览时间  ARGV[2] 浏览时间所在纪元的起始时间  ARGV[3] 半衰期秒数  ARGV[4..] 商品
+-- 进入新纪元而DecrView还没归一化时先在这里归一化,与decay_viewed.lua一样每个纪元只做一次;
+-- 时钟落后的节点按已生效纪元算出小于1的权重,不会在归一化之后写入大权重
+local now = tonumber(ARGV[1])
+local epoch = tonumber(ARGV[2])
+local halfLife = tonumber(ARGV[3])
+local applied = tonumber(redis.call('GET', KEYS[2]) or '-1')
+if applied < epoch then
+  if applied >= 0 then
+    redis.call('ZINTERSTORE', KEYS[1], 1, KEYS[1], 'WEIGHTS', 2 ^ (-(epoch - applied) / halfLife))
+  end
+  redis.call('SET', KEYS[2], epoch)
+  applied = epoch
+end
+-- 分值越小越热门
+local weight = -(2 ^ ((now - applied) / halfLife))
+for i = 4, #ARGV do
+  redis.call('ZINCRBY', KEYS[1], weight, ARGV[i])
+end
+return tostring(-weight)
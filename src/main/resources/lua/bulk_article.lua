@@ -0,0 +1,27 @@
+-- 批量导入一篇文章,重复导入不重复计分
+-- KEYS[1] article:<id>  KEYS[2] articleScore:  KEYS[3] postTime:
+-- KEYS[4] 赞成去重集合  KEYS[5] 反对去重集合  KEYS[6] 赞成去重位图  KEYS[7] 反对去重位图
+-- ARGV[1] article:<id>  ARGV[2] author  ARGV[3] title  ARGV[4] link  ARGV[5] postTime
+-- ARGV[6] 每票分数  ARGV[7] 投票有效期  ARGV[8] 去重方式 set/bitmap,记在文章的dedup字段
+-- ARGV[9] 位图允许的最大用户id
+if redis.call('HSETNX', KEYS[1], 'postTime', ARGV[5]) == 0 then
+  return 0
+end
+redis.call('HMSET', KEYS[1], 'title', ARGV[3], 'link', ARGV[4], 'author', ARGV[2],
+  'dedup', ARGV[8])
+-- 自己也算一票,先于文章导入的投票已经累加过
+redis.call('HINCRBY', KEYS[1], 'votes', 1)
+redis.call('HINCRBY', KEYS[1], 'devotes', 0)
+redis.call('ZINCRBY', KEYS[2], tonumber(ARGV[5]) + tonumber(ARGV[6]), ARGV[1])
+redis.call('ZADD', KEYS[3], ARGV[5], ARGV[1])
+if ARGV[8] == 'bitmap' and string.match(ARGV[2], '^%d+$')
+    and tonumber(ARGV[2]) <= tonumber(ARGV[9]) then
+  redis.call('SETBIT', KEYS[6], ARGV[2], 1)
+else
+  redis.call('SADD', KEYS[4], ARGV[2])
+end
+local expireAt = math.floor(tonumber(ARGV[5]) + tonumber(ARGV[7]))
+for i = 4, 7 do
+  redis.call('EXPIREAT', KEYS[i], expireAt)
+end
+return 1
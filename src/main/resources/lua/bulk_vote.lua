@@ -0,0 +1,37 @@
+-- 批量导入一张投票,不检查投票期,同一用户重复导入不重复计分
+-- KEYS[1] article:<id>  KEYS[2] articleScore:
+-- KEYS[3] 本次投票的去重集合  KEYS[4] 相反的去重集合  KEYS[5] 本次投票的去重位图  KEYS[6] 相反的去重位图
+-- ARGV[1] article:<id>  ARGV[2] userId  ARGV[3] 分数增量  ARGV[4] 计数字段 votes/devotes
+-- ARGV[5] 投票有效期  ARGV[6] 文章还没导入时的去重方式 set/bitmap  ARGV[7] 位图允许的最大用户id
+-- 文章已导入时去重方式取它的dedup字段,与vote_article.lua一致
+-- 只写全局排行,分组排行由导入结束时整体重建,脚本不需要访问KEYS以外的key
+local mode = redis.call('HGET', KEYS[1], 'dedup') or ARGV[6]
+local bitmap = mode == 'bitmap' and string.match(ARGV[2], '^%d+$') ~= nil
+  and tonumber(ARGV[2]) <= tonumber(ARGV[7])
+local this, other = KEYS[3], KEYS[4]
+if bitmap then
+  this, other = KEYS[5], KEYS[6]
+end
+local added
+if bitmap then
+  added = redis.call('SETBIT', this, ARGV[2], 1) == 0
+  if added and redis.call('GETBIT', other, ARGV[2]) == 1 then
+    redis.call('SETBIT', other, ARGV[2], 0)
+  end
+else
+  added = redis.call('SMOVE', other, this, ARGV[2]) == 1
+    or redis.call('SADD', this, ARGV[2]) == 1
+end
+if not added then
+  return 0
+end
+redis.call('ZINCRBY', KEYS[2], ARGV[3], ARGV[1])
+redis.call('HINCRBY', KEYS[1], ARGV[4], 1)
+-- 文章已导入时对齐去重key的过期时间,否则由文章导入时设置
+local postTime = redis.call('HGET', KEYS[1], 'postTime')
+if postTime then
+  local expireAt = math.floor(tonumber(postTime) + tonumber(ARGV[5]))
+  redis.call('EXPIREAT', this, expireAt)
+  redis.call('EXPIREAT', other, expireAt)
+end
+return 1
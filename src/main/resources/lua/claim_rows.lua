@@ -0,0 +1,22 @@
+-- 批量领取到期的数据行,领取即重新排期,多个worker/进程不会重复刷新同一行
+-- KEYS[1] schedule:  KEYS[2] delay:
+-- ARGV[1] now  ARGV[2] 本批最多领取的行数
+-- 返回 {领取的行, 行原定的刷新时间, 需要删除缓存的行, 下一个到期时间(没有排期时为false)}
+local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'WITHSCORES', 'LIMIT', 0, ARGV[2])
+local claimed, scores, removed = {}, {}, {}
+local now = tonumber(ARGV[1])
+for i = 1, #due, 2 do
+  local row = due[i]
+  local delay = tonumber(redis.call('ZSCORE', KEYS[2], row) or '0')
+  if delay <= 0 then
+    redis.call('ZREM', KEYS[2], row)
+    redis.call('ZREM', KEYS[1], row)
+    removed[#removed + 1] = row
+  else
+    redis.call('ZADD', KEYS[1], now + delay, row)
+    claimed[#claimed + 1] = row
+    scores[#scores + 1] = due[i + 1]
+  end
+end
+local upcoming = redis.call('ZRANGE', KEYS[1], 0, 0, 'WITHSCORES')
+return {claimed, scores, removed, upcoming[2] or false}
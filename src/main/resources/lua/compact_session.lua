@@ -0,0 +1,23 @@
+-- 紧凑布局下更新一个会话:用户写入桶字段token,最近浏览写入token:v,换行分隔,最新在前,去重后保留N条
+-- KEYS[1] session:b<bucket>
+-- ARGV[1] token  ARGV[2] user  ARGV[3] 商品,为空表示只刷新用户  ARGV[4] 保留条数
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+if ARGV[3] == '' then
+  return 0
+end
+local field = ARGV[1] .. ':v'
+local limit = tonumber(ARGV[4])
+local items = {ARGV[3]}
+local old = redis.call('HGET', KEYS[1], field)
+if old then
+  for item in string.gmatch(old, '[^\n]+') do
+    if #items >= limit then
+      break
+    end
+    if item ~= ARGV[3] then
+      items[#items + 1] = item
+    end
+  end
+end
+redis.call('HSET', KEYS[1], field, table.concat(items, '\n'))
+return #items
@@ -0,0 +1,18 @@
+-- 进入新纪元时把viewed:整体乘以衰减系数,每个纪元只做一次;每次都裁剪到前N名
+-- KEYS[1] viewed:  KEYS[2] viewed:epoch
+-- ARGV[1] 当前纪元起始时间  ARGV[2] 纪元长度  ARGV[3] 每个纪元的衰减系数  ARGV[4] 保留的商品数
+local epoch = tonumber(ARGV[1])
+local applied = tonumber(redis.call('GET', KEYS[2]) or '-1')
+local renormalized = 0
+if applied < epoch then
+  if applied >= 0 then
+    local epochs = (epoch - applied) / tonumber(ARGV[2])
+    local factor = tonumber(ARGV[3]) ^ epochs
+    redis.call('ZINTERSTORE', KEYS[1], 1, KEYS[1], 'WEIGHTS', factor)
+    renormalized = 1
+  end
+  redis.call('SET', KEYS[2], epoch)
+end
+-- 分值越小越热门,去掉第N名之后的
+redis.call('ZREMRANGEBYRANK', KEYS[1], ARGV[4], -1)
+return renormalized
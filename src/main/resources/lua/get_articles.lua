@@ -0,0 +1,16 @@
+-- 一次取回一页文章,调用方已有同版本的页面时只返回版本号
+-- KEYS[1] 排序zset  KEYS[2] rankVersion:<排序zset>  KEYS[3] pageVersion:<排序zset> 页号到版本的hash
+-- ARGV[1] start  ARGV[2] end  ARGV[3] 调用方缓存的版本号,没有传空串  ARGV[4] 页号
+-- 返回 {version, id1, {field, value...}, id2, {...}, ...}
+-- 版本号由整个排行和这一页的版本拼成,投票只作废受影响的页
+local version = (redis.call('GET', KEYS[2]) or '0') .. '.'
+  .. (redis.call('HGET', KEYS[3], ARGV[4]) or '0')
+if version == ARGV[3] then
+  return {version}
+end
+local res = {version}
+for _, id in ipairs(redis.call('ZREVRANGE', KEYS[1], ARGV[1], ARGV[2])) do
+  res[#res + 1] = id
+  res[#res + 1] = redis.call('HGETALL', id)
+end
+return res
@@ -0,0 +1,31 @@
+-- 最近N小时的热门文章 结果缓存几秒;已结束小时的合并结果按小时增量维护,只有本小时的桶每次重新合并
+-- KEYS[1] trending:<N>h 缓存结果  KEYS[2] 本小时的base(之前N-1个已结束小时的合并)  KEYS[3] 上小时的base
+-- KEYS[4] 本小时桶  KEYS[5] 上小时桶  KEYS[6] N小时前的桶  KEYS[7..] 之前N-1个已结束小时的桶,base需要全量重建时用
+-- ARGV[1] 结果缓存秒数  ARGV[2] base保留秒数  ARGV[3] start  ARGV[4] end
+-- 返回 {id1, score1, {field, value...}, id2, ...}
+if redis.call('EXISTS', KEYS[1]) == 0 then
+  if redis.call('EXISTS', KEYS[2]) == 0 then
+    if redis.call('EXISTS', KEYS[3]) == 1 then
+      -- base(h) = base(h-1) + 桶(h-1) - 桶(h-N)
+      redis.call('ZUNIONSTORE', KEYS[2], 3, KEYS[3], KEYS[5], KEYS[6], 'WEIGHTS', 1, 1, -1)
+      redis.call('ZREMRANGEBYSCORE', KEYS[2], 0, 0)
+    elseif #KEYS > 6 then
+      local closed = {}
+      for i = 7, #KEYS do
+        closed[#closed + 1] = KEYS[i]
+      end
+      redis.call('ZUNIONSTORE', KEYS[2], #closed, unpack(closed))
+    end
+    redis.call('EXPIRE', KEYS[2], ARGV[2])
+  end
+  redis.call('ZUNIONSTORE', KEYS[1], 2, KEYS[2], KEYS[4])
+  redis.call('EXPIRE', KEYS[1], ARGV[1])
+end
+local res = {}
+local ranked = redis.call('ZREVRANGE', KEYS[1], ARGV[3], ARGV[4], 'WITHSCORES')
+for i = 1, #ranked, 2 do
+  res[#res + 1] = ranked[i]
+  res[#res + 1] = ranked[i + 1]
+  res[#res + 1] = redis.call('HGETALL', ranked[i])
+end
+return res
@@ -0,0 +1,9 @@
+-- 合并购物车:匿名会话登录后把商品数量累加到目标购物车,删除源购物车,返回合并后的内容
+-- KEYS[1] 目标cart:<session>  KEYS[2] 源cart:<session>
+-- 源购物车在别的节点时用merge_remote_cart.lua
+local source = redis.call('HGETALL', KEYS[2])
+for i = 1, #source, 2 do
+  redis.call('HINCRBY', KEYS[1], source[i], source[i + 1])
+end
+redis.call('DEL', KEYS[2])
+return redis.call('HGETALL', KEYS[1])
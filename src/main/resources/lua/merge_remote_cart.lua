@@ -0,0 +1,10 @@
+-- 合并别的节点上的购物车:调用方读出源购物车后传入,累加到目标购物车,返回合并后的内容
+-- KEYS[1] 目标cart:<session>  KEYS[2] 合并标记cartMerge:<源session>,和目标购物车同一分区
+-- ARGV[1] 标记的过期秒数  ARGV[2..] 商品和数量,成对出现
+-- 标记已存在说明上次已经累加过、只是源购物车没删掉,这次不再累加,重试不会重复计数
+if redis.call('SET', KEYS[2], 1, 'NX', 'EX', ARGV[1]) then
+  for i = 2, #ARGV, 2 do
+    redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1])
+  end
+end
+return redis.call('HGETALL', KEYS[1])
@@ -0,0 +1,44 @@
+-- 发布文章,原子执行 文章id由调用方先INCR计数器分配,用到的key全部由KEYS传入
+-- KEYS[1] article:<id>  KEYS[2] articleScore:  KEYS[3] postTime:
+-- KEYS[4] 作者这一票的去重集合voted:<id>  KEYS[5] 去重位图votedBits:<id>  KEYS[6] voters:<id>
+-- KEYS[7] articleGroups:<id>  KEYS[8] rankVersion:articleScore:  KEYS[9] rankVersion:postTime:
+-- KEYS[10..] 每个分组5个:articleGroup:<组> articleScore:<组> postTime:<组> 两个分组排行的rankVersion:
+-- ARGV[1] user  ARGV[2] title  ARGV[3] link  ARGV[4] now  ARGV[5] 每票分数  ARGV[6] 投票有效期
+-- ARGV[7] 投票去重方式 set/bitmap,记在文章的dedup字段  ARGV[8] 是否记录voters:HyperLogLog 1/0
+-- ARGV[9] 位图允许的最大用户id  ARGV[10..] 分组,和KEYS[10..]按顺序对应
+local article = KEYS[1]
+-- 自己也算一票,位图方式下作者不是数字id时和vote_article.lua一样退回集合
+if ARGV[7] == 'bitmap' and string.match(ARGV[1], '^%d+$')
+    and tonumber(ARGV[1]) <= tonumber(ARGV[9]) then
+  redis.call('SETBIT', KEYS[5], ARGV[1], 1)
+  redis.call('EXPIRE', KEYS[5], ARGV[6])
+else
+  redis.call('SADD', KEYS[4], ARGV[1])
+  redis.call('EXPIRE', KEYS[4], ARGV[6])
+end
+if ARGV[8] == '1' then
+  redis.call('PFADD', KEYS[6], ARGV[1])
+  redis.call('EXPIRE', KEYS[6], ARGV[6])
+end
+redis.call('HMSET', article,
+  'title', ARGV[2], 'link', ARGV[3], 'author', ARGV[1],
+  'postTime', ARGV[4], 'votes', 1, 'devotes', 0, 'dedup', ARGV[7])
+-- 初始化分数
+local score = tonumber(ARGV[4]) + tonumber(ARGV[5])
+redis.call('ZADD', KEYS[2], score, article)
+-- 文章排序
+redis.call('ZADD', KEYS[3], ARGV[4], article)
+-- 分组及分组排行
+for i = 10, #KEYS, 5 do
+  local group = ARGV[10 + (i - 10) / 5]
+  redis.call('SADD', KEYS[i], article)
+  redis.call('SADD', KEYS[7], group)
+  redis.call('ZADD', KEYS[i + 1], score, article)
+  redis.call('ZADD', KEYS[i + 2], ARGV[4], article)
+  redis.call('INCR', KEYS[i + 3])
+  redis.call('INCR', KEYS[i + 4])
+end
+-- 新文章排在前面,后面每一页都移动了一名,作废整个排行
+redis.call('INCR', KEYS[8])
+redis.call('INCR', KEYS[9])
+return 1
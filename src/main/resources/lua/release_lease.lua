@@ -0,0 +1,6 @@
+-- 释放租约,只删除自己持有的
+-- KEYS[1] 租约key  ARGV[1] 持有者token
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+  return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -0,0 +1,11 @@
+-- 批量更新购物车并返回更新后的内容,原子执行
+-- KEYS[1] cart:<session>
+-- ARGV 商品和数量成对出现,数量<=0表示移除
+for i = 1, #ARGV, 2 do
+  if tonumber(ARGV[i + 1]) <= 0 then
+    redis.call('HDEL', KEYS[1], ARGV[i])
+  else
+    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+  end
+end
+return redis.call('HGETALL', KEYS[1])
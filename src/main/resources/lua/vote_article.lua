@@ -0,0 +1,117 @@
+-- 文章投票/反对票切换,原子执行 用到的key全部由KEYS传入
+-- KEYS[1] postTime:  KEYS[2] articleScore:  KEYS[3] article:<id>
+-- KEYS[4] 本次投票的去重集合  KEYS[5] 相反的去重集合  KEYS[6] 本次投票的去重位图  KEYS[7] 相反的去重位图
+-- KEYS[8] articleGroups:<id> 文章所属分组  KEYS[9] trend:<整点> 本小时的投票分数
+-- KEYS[10] voters:<id> 投票用户的HyperLogLog,ARGV[11]为1时才写入
+-- KEYS[11] rankVersion:articleScore:  KEYS[12] pageVersion:articleScore:
+-- KEYS[13] rankVersion:postTime:  KEYS[14] pageVersion:postTime:
+-- KEYS[15..] 每个分组6个:articleScore:<组> 它的rankVersion: 它的pageVersion:,postTime:<组> 它的rankVersion: 它的pageVersion:
+-- ARGV[1] article:<id>  ARGV[2] userId  ARGV[3] 截止发布时间
+-- ARGV[4] 分数增量  ARGV[5] 计数字段 votes/devotes  ARGV[6] 投票有效期
+-- ARGV[7] 小时桶的过期时间点  ARGV[8] 位图允许的最大用户id
+-- ARGV[9] 每页文章数  ARGV[10] 一次最多逐页作废的页数  ARGV[11] 是否记录voters:HyperLogLog 1/0
+-- ARGV[12..] 调用方认为文章所属的分组,和KEYS[15..]按顺序对应
+-- 返回 {分数, 赞成数, 反对数};分组和articleGroups:<id>不一致时不写入,返回 {'groups', 实际分组...} 由调用方重试
+-- 去重方式取文章发布时记在article:<id>的dedup字段,没有该字段的旧文章按集合去重;
+-- 位图文章遇到非数字或超过上限的用户id时退回集合,避免一个大id让位图分配几百MB
+-- 页面缓存版本:pageVersion:<排行> 是hash,字段为页号,只作废文章所在及名次经过的页,
+-- 跨度超过ARGV[10]页时改为递增整个排行的rankVersion:<排行>
+local pageSize, maxPages = tonumber(ARGV[9]), tonumber(ARGV[10])
+local function touch(rankVersion, pageVersion, from, to)
+  local first = math.floor(math.min(from, to) / pageSize) + 1
+  local last = math.floor(math.max(from, to) / pageSize) + 1
+  if last - first >= maxPages then
+    redis.call('INCR', rankVersion)
+    return
+  end
+  for page = first, last do
+    redis.call('HINCRBY', pageVersion, page, 1)
+  end
+end
+-- 按分数排的排行:名次可能变化
+local function rescore(ranking, rankVersion, pageVersion)
+  local before = redis.call('ZREVRANK', ranking, ARGV[1])
+  redis.call('ZINCRBY', ranking, ARGV[4], ARGV[1])
+  if before then
+    touch(rankVersion, pageVersion, before, redis.call('ZREVRANK', ranking, ARGV[1]))
+  else
+    redis.call('INCR', rankVersion)
+  end
+end
+-- 按发布时间排的排行:名次不变,只有所在页的票数变化
+local function refresh(ranking, rankVersion, pageVersion)
+  local rank = redis.call('ZREVRANK', ranking, ARGV[1])
+  if rank then
+    touch(rankVersion, pageVersion, rank, rank)
+  end
+end
+local postTime = redis.call('ZSCORE', KEYS[1], ARGV[1])
+if not postTime or tonumber(postTime) < tonumber(ARGV[3]) then
+  return nil
+end
+-- 分组的排行key由调用方传入,和实际分组不一致时不能写
+local groups = redis.call('SMEMBERS', KEYS[8])
+local expected = {}
+for i = 12, #ARGV do
+  expected[ARGV[i]] = true
+end
+local same = #groups == #ARGV - 11
+for _, group in ipairs(groups) do
+  same = same and expected[group] ~= nil
+end
+if not same then
+  local res = {'groups'}
+  for _, group in ipairs(groups) do
+    res[#res + 1] = group
+  end
+  return res
+end
+local bitmap = redis.call('HGET', KEYS[3], 'dedup') == 'bitmap'
+  and string.match(ARGV[2], '^%d+$') ~= nil
+  and tonumber(ARGV[2]) <= tonumber(ARGV[8])
+local this, other = KEYS[4], KEYS[5]
+if bitmap then
+  this, other = KEYS[6], KEYS[7]
+end
+local voted
+if bitmap then
+  voted = redis.call('GETBIT', this, ARGV[2]) == 1
+else
+  voted = redis.call('SISMEMBER', this, ARGV[2]) == 1
+end
+-- 已经投过同样的票,不重复计分
+if not voted then
+  if bitmap then
+    redis.call('SETBIT', this, ARGV[2], 1)
+    -- 不存在的位图上SETBIT 0也会按偏移分配内存,先确认再清
+    if redis.call('GETBIT', other, ARGV[2]) == 1 then
+      redis.call('SETBIT', other, ARGV[2], 0)
+    end
+  elseif redis.call('SMOVE', other, this, ARGV[2]) == 0 then
+    redis.call('SADD', this, ARGV[2])
+  end
+  -- 去重key随投票期一起过期,过期后投票本来就会被拒绝
+  local expireAt = math.floor(tonumber(postTime) + tonumber(ARGV[6]))
+  redis.call('EXPIREAT', this, expireAt)
+  redis.call('EXPIREAT', other, expireAt)
+  if ARGV[11] == '1' then
+    redis.call('PFADD', KEYS[10], ARGV[2])
+    redis.call('EXPIREAT', KEYS[10], expireAt)
+  end
+  -- 小时桶,热度查询只合并最近的几个桶
+  redis.call('ZINCRBY', KEYS[9], ARGV[4], ARGV[1])
+  redis.call('EXPIREAT', KEYS[9], ARGV[7])
+  rescore(KEYS[2], KEYS[11], KEYS[12])
+  refresh(KEYS[1], KEYS[13], KEYS[14])
+  -- 同步分组排行
+  for i = 15, #KEYS, 6 do
+    rescore(KEYS[i], KEYS[i + 1], KEYS[i + 2])
+    refresh(KEYS[i + 3], KEYS[i + 4], KEYS[i + 5])
+  end
+  redis.call('HINCRBY', KEYS[3], ARGV[5], 1)
+end
+return {
+  redis.call('ZSCORE', KEYS[2], ARGV[1]),
+  redis.call('HGET', KEYS[3], 'votes') or '0',
+  redis.call('HGET', KEYS[3], 'devotes') or '0'
+}
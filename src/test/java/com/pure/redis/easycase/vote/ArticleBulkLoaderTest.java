@@ -0,0 +1,71 @@
+package com.pure.redis.easycase.vote;
+
+import com.pure.redis.util.LocalRedis;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import redis.clients.jedis.Jedis;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ArticleBulkLoaderTest {
+  @ClassRule public static final LocalRedis REDIS = new LocalRedis();
+  @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Jedis jedis;
+
+  @Before
+  public void setUp() {
+    REDIS.flush();
+    jedis = REDIS.connect();
+  }
+
+  @After
+  public void tearDown() {
+    jedis.close();
+  }
+
+  private void load(String... lines) throws IOException {
+    Path input = folder.newFile("input.csv").toPath();
+    Files.write(input, Arrays.asList(lines), StandardCharsets.UTF_8);
+    try (ArticleBulkLoader.Sink sink = new ArticleBulkLoader.PipelineSink(REDIS.connect())) {
+      new ArticleBulkLoader(sink, VoteDedup.SETS, 2, null).load(input);
+    }
+  }
+
+  @Test
+  public void rebuildsInputAndExistingGroups() throws IOException {
+    String existing = ArticleVote.postArticle(jedis, "1", "old", "http://a", new String[] {"old"});
+    load(
+        "article,100,2,new,http://b,1000,fresh",
+        "vote,100,3,up",
+        "vote," + existing + ",4,up",
+        "vote," + existing + ",5,down",
+        "vote," + existing + ",6,up");
+
+    assertEquals(
+        jedis.zscore("articleScore:", "article:100"),
+        jedis.zscore("articleScore:fresh", "article:100"));
+    // 文章导入前就在old分组里,导入的投票也同步到old的排行
+    assertEquals(
+        jedis.zscore("articleScore:", "article:" + existing),
+        jedis.zscore("articleScore:old", "article:" + existing));
+    // 作者自己一票,导入两票赞成一票反对
+    assertEquals(
+        Double.parseDouble(jedis.hget("article:" + existing, "postTime"))
+            + 2 * ArticleVote.VOTE_SCORE,
+        jedis.zscore("articleScore:", "article:" + existing),
+        0);
+    // 发布时递增一次,导入结束重建时再递增一次
+    assertEquals("2", jedis.get("rankVersion:articleScore:old"));
+  }
+}
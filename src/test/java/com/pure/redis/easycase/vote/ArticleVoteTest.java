@@ -0,0 +1,156 @@
+package com.pure.redis.easycase.vote;
+
+import com.pure.redis.util.LocalRedis;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ArticleVoteTest {
+  @ClassRule public static final LocalRedis REDIS = new LocalRedis();
+
+  private Jedis jedis;
+
+  @Before
+  public void setUp() {
+    REDIS.flush();
+    jedis = REDIS.connect();
+  }
+
+  @After
+  public void tearDown() {
+    ArticleVote.disablePageCache();
+    ArticleVote.setVoteDedup(VoteDedup.fromConfig());
+    jedis.close();
+  }
+
+  @Test
+  public void voteInvalidatesCachedPage() {
+    ArticleVote.enablePageCache(10, 0);
+    String id = ArticleVote.postArticle(jedis, "1", "title", "http://a");
+    List<Map<String, String>> before = ArticleVote.getArticles(jedis, 1, "articleScore:");
+    assertEquals("1", before.get(0).get("votes"));
+    // 版本没变时沿用缓存的页面
+    assertSame(
+        before.get(0), ArticleVote.getArticles(jedis, 1, "articleScore:").get(0));
+
+    ArticleVote.voteArticle(jedis, "2", id, true);
+    assertEquals("2", ArticleVote.getArticles(jedis, 1, "articleScore:").get(0).get("votes"));
+    assertEquals("2", ArticleVote.getArticles(jedis, 1, "postTime:").get(0).get("votes"));
+  }
+
+  @Test
+  public void postInvalidatesWholeRanking() {
+    ArticleVote.enablePageCache(10, 0);
+    ArticleVote.postArticle(jedis, "1", "first", "http://a");
+    assertEquals(1, ArticleVote.getArticles(jedis, 1, "postTime:").size());
+    ArticleVote.postArticle(jedis, "2", "second", "http://b");
+    assertEquals(2, ArticleVote.getArticles(jedis, 1, "postTime:").size());
+  }
+
+  @Test
+  public void voteRescoresGroupRankings() {
+    String first = ArticleVote.postArticle(jedis, "1", "first", "http://a", new String[] {"g"});
+    String second =
+        ArticleVote.postArticle(jedis, "2", "second", "http://b", new String[] {"g", "h"});
+    ArticleVote.voteArticle(jedis, "3", first, true);
+    ArticleVote.voteArticle(jedis, "4", first, true);
+
+    List<Map<String, String>> group = ArticleVote.getGroupArticles(jedis, "g", 1, "articleScore:");
+    assertEquals("article:" + first, group.get(0).get("articleId"));
+    assertEquals("article:" + second, group.get(1).get("articleId"));
+    assertEquals(
+        jedis.zscore("articleScore:", "article:" + first),
+        jedis.zscore("articleScore:g", "article:" + first));
+    assertEquals(1, ArticleVote.getGroupArticles(jedis, "h", 1, "articleScore:").size());
+
+    ArticleVote.voteArticle(jedis, "3", first, false);
+    assertEquals(
+        jedis.zscore("articleScore:", "article:" + first),
+        jedis.zscore("articleScore:g", "article:" + first));
+  }
+
+  @Test
+  public void addGroupCopiesCurrentScore() {
+    String id = ArticleVote.postArticle(jedis, "1", "title", "http://a");
+    ArticleVote.voteArticle(jedis, "2", id, true);
+    ArticleVote.addGroup(jedis, id, new String[] {"late"});
+    assertEquals(
+        jedis.zscore("articleScore:", "article:" + id),
+        jedis.zscore("articleScore:late", "article:" + id));
+    assertEquals(
+        jedis.zscore("postTime:", "article:" + id), jedis.zscore("postTime:late", "article:" + id));
+    // 加组之后的投票同步到新分组
+    ArticleVote.voteArticle(jedis, "3", id, true);
+    assertEquals(
+        jedis.zscore("articleScore:", "article:" + id),
+        jedis.zscore("articleScore:late", "article:" + id));
+  }
+
+  @Test
+  public void voteRetriesWhenLocalGroupsAreStale() {
+    String id = ArticleVote.postArticle(jedis, "1", "title", "http://a", new String[] {"g"});
+    // 绕过addGroup加入分组,本地记录的分组过时
+    jedis.sadd("articleGroup:h", "article:" + id);
+    ArticleVote.rebuildGroupRanking(jedis, "h");
+
+    ArticleVote.voteArticle(jedis, "2", id, true);
+    Double score = jedis.zscore("articleScore:", "article:" + id);
+    assertEquals(score, jedis.zscore("articleScore:g", "article:" + id));
+    assertEquals(score, jedis.zscore("articleScore:h", "article:" + id));
+  }
+
+  @Test
+  public void bitmapDedupCountsEachUserOnce() {
+    ArticleVote.setVoteDedup(new VoteDedup(true, false));
+    String id = ArticleVote.postArticle(jedis, "1", "title", "http://a");
+    assertTrue(jedis.getbit("votedBits:" + id, 1));
+
+    VoteResult voted = ArticleVote.voteArticle(jedis, "7", id, true);
+    assertEquals(2, voted.getVotes());
+    VoteResult again = ArticleVote.voteArticle(jedis, "7", id, true);
+    assertEquals(2, again.getVotes());
+    assertEquals(voted.getScore(), again.getScore(), 0);
+    assertTrue(jedis.getbit("votedBits:" + id, 7));
+    assertFalse(jedis.exists("voted:" + id));
+
+    // 改投反对票,从赞成位图移到反对位图
+    VoteResult devoted = ArticleVote.voteArticle(jedis, "7", id, false);
+    assertEquals(1, devoted.getDevotes());
+    assertEquals(voted.getScore() - ArticleVote.VOTE_SCORE, devoted.getScore(), 0);
+    assertFalse(jedis.getbit("votedBits:" + id, 7));
+    assertTrue(jedis.getbit("devotedBits:" + id, 7));
+  }
+
+  @Test
+  public void bitmapFallsBackToSetAboveCap() {
+    ArticleVote.setVoteDedup(new VoteDedup(true, false, 100));
+    String id = ArticleVote.postArticle(jedis, "1", "title", "http://a");
+    ArticleVote.voteArticle(jedis, "1000000000", id, true);
+    ArticleVote.voteArticle(jedis, "alice", id, true);
+    assertEquals(3, ArticleVote.voteArticle(jedis, "alice", id, true).getVotes());
+    assertTrue(jedis.sismember("voted:" + id, "1000000000"));
+    assertTrue(jedis.sismember("voted:" + id, "alice"));
+    // 超过上限的id没有让位图分配内存
+    assertTrue(jedis.strlen("votedBits:" + id) <= 1);
+  }
+
+  @Test
+  public void articleKeepsDedupModeFromPostTime() {
+    ArticleVote.setVoteDedup(VoteDedup.SETS);
+    String id = ArticleVote.postArticle(jedis, "1", "title", "http://a");
+    ArticleVote.setVoteDedup(new VoteDedup(true, false));
+    ArticleVote.voteArticle(jedis, "7", id, true);
+    assertTrue(jedis.sismember("voted:" + id, "7"));
+    assertFalse(jedis.exists("votedBits:" + id));
+  }
+}
@@ -0,0 +1,79 @@
+package com.pure.redis.easycase.vote;
+
+import com.pure.redis.util.LocalRedis;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TrendingTest {
+  @ClassRule public static final LocalRedis REDIS = new LocalRedis();
+
+  private Jedis jedis;
+  private long hour;
+
+  @Before
+  public void setUp() {
+    REDIS.flush();
+    jedis = REDIS.connect();
+    long now = System.currentTimeMillis() / 1000;
+    hour = now - now % 3600;
+  }
+
+  @After
+  public void tearDown() {
+    jedis.close();
+  }
+
+  @Test
+  public void voteCountsInCurrentHour() {
+    String id = ArticleVote.postArticle(jedis, "1", "title", "http://a");
+    ArticleVote.voteArticle(jedis, "2", id, true);
+    List<Map<String, String>> trending = ArticleVote.getTrending(jedis, 1, 1);
+    assertEquals(1, trending.size());
+    assertEquals("article:" + id, trending.get(0).get("articleId"));
+    assertEquals(ArticleVote.VOTE_SCORE, Double.parseDouble(trending.get(0).get("trendScore")), 0);
+    assertEquals("title", trending.get(0).get("title"));
+  }
+
+  @Test
+  public void windowCoversOnlyRequestedHours() {
+    jedis.zadd("trend:" + (hour - 3600), 10, "article:1");
+    jedis.zadd("trend:" + (hour - 7200), 50, "article:2");
+
+    List<Map<String, String>> twoHours = ArticleVote.getTrending(jedis, 2, 1);
+    assertEquals(1, twoHours.size());
+    assertEquals("article:1", twoHours.get(0).get("articleId"));
+
+    List<Map<String, String>> threeHours = ArticleVote.getTrending(jedis, 3, 1);
+    assertEquals(2, threeHours.size());
+    assertEquals("article:2", threeHours.get(0).get("articleId"));
+    assertEquals("article:1", threeHours.get(1).get("articleId"));
+  }
+
+  @Test
+  public void baseRollsForwardFromPreviousHour() {
+    // 上小时的base覆盖h-2,滚动后加上h-1的桶,减去移出窗口的h-2的桶
+    jedis.zadd("trendBase:2:" + (hour - 3600), 50, "article:2");
+    jedis.zadd("trend:" + (hour - 3600), 10, "article:1");
+    jedis.zadd("trend:" + (hour - 7200), 50, "article:2");
+
+    List<Map<String, String>> trending = ArticleVote.getTrending(jedis, 2, 1);
+    assertEquals(1, trending.size());
+    assertEquals("article:1", trending.get(0).get("articleId"));
+    assertEquals(Double.valueOf(10), jedis.zscore("trendBase:2:" + hour, "article:1"));
+    assertNull(jedis.zscore("trendBase:2:" + hour, "article:2"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsHoursOutsideBuckets() {
+    ArticleVote.getTrending(jedis, 0, 1);
+  }
+}
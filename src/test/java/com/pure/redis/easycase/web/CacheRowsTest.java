@@ -0,0 +1,111 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.Codec;
+import com.pure.redis.util.LocalRedis;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheRowsTest {
+  @ClassRule public static final LocalRedis REDIS = new LocalRedis();
+
+  private final WebCache webCache = new WebCache();
+  private Jedis jedis;
+  private CacheRows rows;
+
+  @Before
+  public void setUp() {
+    REDIS.flush();
+    jedis = REDIS.connect();
+    rows = new CacheRows(null, 2, 1);
+  }
+
+  @After
+  public void tearDown() {
+    rows.shutdownWorkers();
+    jedis.close();
+  }
+
+  @Test
+  public void claimsDueRowsAndReschedules() {
+    webCache.scheduleRowCache(jedis, "1", 5);
+    webCache.scheduleRowCache(jedis, "2", 5);
+    long now = System.currentTimeMillis() / 1000;
+
+    assertEquals(2, rows.refreshBatch(jedis));
+    assertTrue(jedis.exists("inv:1"));
+    assertTrue(jedis.exists("inv:2"));
+    assertEquals(2, rows.getRefreshed());
+    assertTrue(jedis.zscore("schedule:", "1") >= now + 5);
+    // 已领取的行重新排期到5秒后,另一个调度器立即领取拿不到
+    CacheRows other = new CacheRows(null, 2, 1);
+    try {
+      assertEquals(0, other.refreshBatch(jedis));
+    } finally {
+      other.shutdownWorkers();
+    }
+  }
+
+  @Test
+  public void claimsAtMostBatchSize() {
+    for (int i = 0; i < 5; i++) {
+      webCache.scheduleRowCache(jedis, String.valueOf(i), 5);
+    }
+    assertEquals(2, rows.refreshBatch(jedis));
+    assertEquals(2, rows.refreshBatch(jedis));
+    assertEquals(1, rows.refreshBatch(jedis));
+    assertEquals(0, rows.refreshBatch(jedis));
+    assertEquals(5, rows.getRefreshed());
+  }
+
+  @Test
+  public void nonPositiveDelayRemovesRow() {
+    webCache.scheduleRowCache(jedis, "1", 5);
+    rows.refreshBatch(jedis);
+    jedis.zadd("delay:", 0, "1");
+    jedis.zadd("schedule:", 0, "1");
+
+    assertEquals(1, rows.refreshBatch(jedis));
+    assertFalse(jedis.exists("inv:1"));
+    assertNull(jedis.zscore("schedule:", "1"));
+    assertNull(jedis.zscore("delay:", "1"));
+  }
+
+  @Test
+  public void failedLoadsAreNotCounted() {
+    Codec<Inventory> binary = InventoryCodec.binary(256);
+    Codec<Inventory> failing =
+        new Codec<Inventory>() {
+          @Override
+          public byte[] encode(Inventory value) {
+            if ("bad".equals(value.getId())) {
+              throw new IllegalStateException("load failed");
+            }
+            return binary.encode(value);
+          }
+
+          @Override
+          public Inventory decode(byte[] bytes) {
+            return binary.decode(bytes);
+          }
+        };
+    CacheRows failingRows = new CacheRows(null, 10, 1, failing);
+    try {
+      webCache.scheduleRowCache(jedis, "good", 5);
+      webCache.scheduleRowCache(jedis, "bad", 5);
+      assertEquals(2, failingRows.refreshBatch(jedis));
+      assertEquals(1, failingRows.getRefreshed());
+      assertTrue(jedis.exists("inv:good"));
+      assertFalse(jedis.exists("inv:bad"));
+    } finally {
+      failingRows.shutdownWorkers();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.LocalRedis;
+import com.pure.redis.util.ShardRouter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+
+public class CartTest {
+  @ClassRule public static final LocalRedis REDIS = new LocalRedis();
+  @ClassRule public static final LocalRedis OTHER = new LocalRedis();
+
+  private final WebCache webCache = new WebCache();
+  private Jedis jedis;
+
+  @Before
+  public void setUp() {
+    REDIS.flush();
+    OTHER.flush();
+    jedis = REDIS.connect();
+  }
+
+  @After
+  public void tearDown() {
+    jedis.close();
+  }
+
+  private static Map<String, String> cart(String... pairs) {
+    Map<String, String> cart = new HashMap<>();
+    for (int i = 0; i < pairs.length; i += 2) {
+      cart.put(pairs[i], pairs[i + 1]);
+    }
+    return cart;
+  }
+
+  @Test
+  public void updateCartAndGetReturnsSnapshot() {
+    Map<String, Integer> items = new LinkedHashMap<>();
+    items.put("a", 1);
+    items.put("b", 2);
+    assertEquals(cart("a", "1", "b", "2"), webCache.updateCartAndGet(jedis, "s", items));
+
+    items.clear();
+    items.put("a", 0);
+    items.put("c", 5);
+    assertEquals(cart("b", "2", "c", "5"), webCache.updateCartAndGet(jedis, "s", items));
+    assertEquals(
+        cart("b", "2", "c", "5"),
+        webCache.updateCartAndGet(jedis, "s", Collections.emptyMap()));
+  }
+
+  @Test
+  public void mergeCartAddsCountsAndDeletesSource() {
+    jedis.hset("cart:anon", cart("x", "1", "y", "2"));
+    jedis.hset("cart:user", cart("x", "3"));
+    assertEquals(cart("x", "4", "y", "2"), webCache.mergeCart(jedis, "anon", "user"));
+    assertFalse(jedis.exists("cart:anon"));
+    // 源购物车已经合并过,再合并不变
+    assertEquals(cart("x", "4", "y", "2"), webCache.mergeCart(jedis, "anon", "user"));
+  }
+
+  @Test
+  public void remoteMergeAddsOnceUntilMarkerCleared() {
+    Map<String, String> items = cart("x", "2");
+    assertEquals(cart("x", "2"), webCache.addToCart(jedis, "anon", "user", items));
+    // 源购物车删除前重试,不重复累加
+    assertEquals(cart("x", "2"), webCache.addToCart(jedis, "anon", "user", items));
+    webCache.clearCartMerge(jedis, "anon", "user");
+    assertEquals(cart("x", "4"), webCache.addToCart(jedis, "anon", "user", items));
+  }
+
+  @Test
+  public void shardedMergeMovesCartAcrossNodes() {
+    ShardRouter router = new ShardRouter(Arrays.asList(REDIS.getPool(), OTHER.getPool()), 2);
+    ShardedSessions sessions = new ShardedSessions(router);
+    SessionKeys keys = sessions.getWebCache().getSessionKeys();
+    String from = "anon";
+    String to = "user0";
+    for (int i = 1; keys.partition(from) == keys.partition(to); i++) {
+      to = "user" + i;
+    }
+    assertNotSame(router.node(keys.partition(from)), router.node(keys.partition(to)));
+
+    String source = sessions.getWebCache().cartKey(from);
+    try (Jedis node = router.node(keys.partition(from)).getResource()) {
+      node.hset(source, cart("x", "1", "y", "2"));
+    }
+    assertEquals(cart("x", "1", "y", "2"), sessions.mergeCart(from, to));
+    try (Jedis node = router.node(keys.partition(from)).getResource()) {
+      assertFalse(node.exists(source));
+    }
+    try (Jedis node = router.node(keys.partition(to)).getResource()) {
+      assertFalse(node.exists(keys.cartMerge(keys.partition(to), from)));
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.LocalRedis;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CompactSessionTest {
+  @ClassRule public static final LocalRedis REDIS = new LocalRedis();
+
+  private final WebCache webCache = new WebCache();
+  private Jedis jedis;
+
+  @Before
+  public void setUp() {
+    REDIS.flush();
+    jedis = REDIS.connect();
+    webCache.setSessionKeys(SessionKeys.DEFAULT.compact(4));
+  }
+
+  @After
+  public void tearDown() {
+    jedis.close();
+  }
+
+  @Test
+  public void writesUserAndRecentViewsIntoBucket() {
+    // 脚本没有预加载,第一次写入走NOSCRIPT重发
+    webCache.updateToken(jedis, "t1", "alice", "p1");
+    webCache.updateToken(jedis, "t1", "alice", "p2");
+    webCache.updateToken(jedis, "t1", "alice", "p1");
+    assertEquals("alice", webCache.checkToken(jedis, "t1"));
+    assertEquals(Arrays.asList("p1", "p2"), webCache.recentlyViewed(jedis, "t1"));
+    assertFalse(jedis.exists("login:"));
+    assertFalse(jedis.exists("viewed:t1"));
+  }
+
+  @Test
+  public void emptyProductOnlyRefreshesUser() {
+    webCache.updateToken(jedis, "t1", "alice", "p1");
+    webCache.updateToken(jedis, "t1", "bob", null);
+    assertEquals("bob", webCache.checkToken(jedis, "t1"));
+    assertEquals(Arrays.asList("p1"), webCache.recentlyViewed(jedis, "t1"));
+  }
+
+  @Test
+  public void keepsOnlyNewestViews() {
+    List<TokenHit> hits = new ArrayList<>();
+    for (int i = 0; i < 30; i++) {
+      hits.add(new TokenHit("t1", "alice", "p" + i));
+    }
+    webCache.updateTokens(jedis, hits);
+    List<String> views = webCache.recentlyViewed(jedis, "t1");
+    assertEquals(25, views.size());
+    assertEquals("p29", views.get(0));
+    assertEquals("p5", views.get(24));
+  }
+}
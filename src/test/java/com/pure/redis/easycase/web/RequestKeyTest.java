@@ -0,0 +1,73 @@
+package com.pure.redis.easycase.web;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestKeyTest {
+  private static String key(String request) {
+    return RequestKey.parse(request).cacheKey();
+  }
+
+  @Test
+  public void rejectsNonUrls() {
+    assertNull(RequestKey.parse(null));
+    assertNull(RequestKey.parse("no scheme"));
+    assertNull(RequestKey.parse("://missing"));
+    assertNull(RequestKey.parse("1http://bad.scheme"));
+  }
+
+  @Test
+  public void readsParams() {
+    RequestKey key = RequestKey.parse("http://a.test/p?item=1&flag&empty=&x=a=b#frag");
+    assertEquals("1", key.getParam("item"));
+    assertEquals("", key.getParam("empty"));
+    assertEquals("a=b", key.getParam("x"));
+    assertNull(key.getParam("flag"));
+    assertTrue(key.hasParam("flag"));
+    assertFalse(key.hasParam("frag"));
+    assertFalse(key.hasParam("ite"));
+  }
+
+  @Test
+  public void duplicateParamTakesLast() {
+    assertEquals("2", RequestKey.parse("http://a.test/?a=1&a=2").getParam("a"));
+  }
+
+  @Test
+  public void keyIgnoresParamOrder() {
+    assertEquals(key("http://a.test/p?a=1&b=2&c"), key("http://a.test/p?c&b=2&a=1"));
+  }
+
+  @Test
+  public void keyKeepsOrderOfDuplicateParams() {
+    // getParam取最后一个,两者返回不同的页面
+    assertNotEquals(key("http://a.test/p?a=1&a=2"), key("http://a.test/p?a=2&a=1"));
+    assertEquals(key("http://a.test/p?a=1&b=0&a=2"), key("http://a.test/p?b=0&a=1&a=2"));
+  }
+
+  @Test
+  public void keySortsByNameOnly() {
+    // 按完整的k=v排序时"a=2"在"a.b=1"之后,按名字排序时"a"在"a.b"之前
+    assertEquals(key("http://a.test/?a=2&a.b=1"), key("http://a.test/?a.b=1&a=2"));
+    assertNotEquals(key("http://a.test/?a=1"), key("http://a.test/?a=2"));
+  }
+
+  @Test
+  public void keyNormalizesSchemeAndHostOnly() {
+    assertEquals(key("http://a.test/Path?q=1"), key("HTTP://A.TEST/Path?q=1"));
+    assertNotEquals(key("http://a.test/Path"), key("http://a.test/path"));
+    assertNotEquals(key("http://a.test/p?q=A"), key("http://a.test/p?q=a"));
+  }
+
+  @Test
+  public void keyIgnoresFragmentAndEmptySegments() {
+    assertEquals(key("http://a.test/p?a=1"), key("http://a.test/p?a=1#top"));
+    assertEquals(key("http://a.test/p?a=1&b=2"), key("http://a.test/p?&a=1&&b=2&"));
+    assertEquals(32, key("http://a.test").length());
+  }
+}
@@ -0,0 +1,93 @@
+package com.pure.redis.easycase.web;
+
+import com.pure.redis.util.LocalRedis;
+import com.pure.redis.util.LuaScript;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ViewDecayTest {
+  @ClassRule public static final LocalRedis REDIS = new LocalRedis();
+
+  private static final long HALF_LIFE = 3600;
+  private static final long EPOCH = 86400;
+  /** 某个纪元的起点 */
+  private static final long BOUNDARY = 20000 * EPOCH;
+
+  private final WebCache webCache = new WebCache();
+  private final ViewDecay decay = new ViewDecay(HALF_LIFE, EPOCH);
+  private Jedis jedis;
+
+  @Before
+  public void setUp() {
+    REDIS.flush();
+    jedis = REDIS.connect();
+    webCache.setViewDecay(decay);
+  }
+
+  @After
+  public void tearDown() {
+    jedis.close();
+  }
+
+  private void view(String product, long timestamp) {
+    Pipeline pipeline = jedis.pipelined();
+    LuaScript.Batch batch =
+        webCache.writeViews(
+            pipeline, Collections.singletonList(new TokenHit("t", "u", product)), timestamp);
+    pipeline.sync();
+    batch.resendNoScript(jedis);
+  }
+
+  private double score(String product) {
+    return jedis.zscore("viewed:", product);
+  }
+
+  @Test
+  public void writeAtEpochBoundaryRenormalizesFirst() {
+    view("old", BOUNDARY - 1);
+    assertEquals(-Math.pow(2, (EPOCH - 1) / (double) HALF_LIFE), score("old"), 1e-6);
+
+    // DecrView还没运行,边界上的写入先归一化再按新纪元计权重
+    view("new", BOUNDARY);
+    assertEquals(String.valueOf(BOUNDARY), jedis.get("viewed:epoch"));
+    assertEquals(-1, score("new"), 1e-9);
+    assertEquals(-Math.pow(2, -1 / (double) HALF_LIFE), score("old"), 1e-9);
+
+    // DecrView随后运行不会再归一化一次
+    assertFalse(new DecrView(null, decay).maintain(jedis, BOUNDARY + 1));
+    assertEquals(-1, score("new"), 1e-9);
+  }
+
+  @Test
+  public void laggingClockDoesNotWriteLargeWeight() {
+    view("new", BOUNDARY);
+    // 时钟落后1秒的节点仍在上个纪元末尾,权重按已生效的纪元算
+    view("late", BOUNDARY - 1);
+    assertEquals(-Math.pow(2, -1 / (double) HALF_LIFE), score("late"), 1e-9);
+    assertEquals(String.valueOf(BOUNDARY), jedis.get("viewed:epoch"));
+  }
+
+  @Test
+  public void decaysAcrossSkippedEpochsWithoutDecrView() {
+    view("a", BOUNDARY);
+    view("b", BOUNDARY + 2 * EPOCH);
+    assertEquals(-Math.pow(2, -2 * EPOCH / (double) HALF_LIFE), score("a"), 1e-12);
+    assertEquals(-1, score("b"), 1e-9);
+  }
+
+  @Test
+  public void halfLifeLaterViewCountsTwice() {
+    view("a", BOUNDARY + 100);
+    view("b", BOUNDARY + 100 + HALF_LIFE);
+    assertEquals(2 * score("a"), score("b"), 1e-9);
+  }
+}
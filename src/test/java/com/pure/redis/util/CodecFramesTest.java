@@ -0,0 +1,66 @@
+package com.pure.redis.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CodecFramesTest {
+  @Test
+  public void smallPayloadIsNotCompressed() {
+    byte[] payload = "hello".getBytes(StandardCharsets.UTF_8);
+    byte[] framed = CodecFrames.wrap(CodecFrames.FORMAT_TEXT, payload, 1024);
+    assertEquals(payload.length + 2, framed.length);
+    assertTrue(CodecFrames.isFramed(framed));
+    assertEquals(CodecFrames.FORMAT_TEXT, CodecFrames.format(framed));
+    assertArrayEquals(payload, CodecFrames.payload(framed));
+  }
+
+  @Test
+  public void largeCompressiblePayloadIsCompressed() {
+    byte[] payload = new byte[10_000];
+    Arrays.fill(payload, (byte) 'a');
+    byte[] framed = CodecFrames.wrap(CodecFrames.FORMAT_ROW, payload, 1024);
+    assertTrue(framed.length < payload.length / 10);
+    assertEquals(CodecFrames.FORMAT_ROW, CodecFrames.format(framed));
+    assertArrayEquals(payload, CodecFrames.payload(framed));
+  }
+
+  @Test
+  public void incompressiblePayloadStaysRaw() {
+    byte[] payload = new byte[4096];
+    new Random(42).nextBytes(payload);
+    byte[] framed = CodecFrames.wrap(CodecFrames.FORMAT_ROW, payload, 1024);
+    assertEquals(payload.length + 2, framed.length);
+    assertArrayEquals(payload, CodecFrames.payload(framed));
+  }
+
+  @Test
+  public void compressionCanBeDisabled() {
+    byte[] payload = new byte[10_000];
+    byte[] framed = CodecFrames.wrap(CodecFrames.FORMAT_ROW, payload, 0);
+    assertEquals(payload.length + 2, framed.length);
+  }
+
+  @Test
+  public void legacyValuesAreNotFramed() {
+    assertFalse(CodecFrames.isFramed(null));
+    assertFalse(CodecFrames.isFramed(new byte[0]));
+    assertFalse(CodecFrames.isFramed("{\"id\":1}".getBytes(StandardCharsets.UTF_8)));
+    assertFalse(CodecFrames.isFramed("中文".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void corruptCompressedValueFails() {
+    byte[] payload = new byte[10_000];
+    byte[] framed = CodecFrames.wrap(CodecFrames.FORMAT_ROW, payload, 1024);
+    // 头部2字节+原始长度4字节,压缩数据只留2字节
+    CodecFrames.payload(Arrays.copyOf(framed, 8));
+  }
+}
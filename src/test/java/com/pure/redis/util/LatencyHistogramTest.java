@@ -0,0 +1,69 @@
+package com.pure.redis.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+  @Test
+  public void bucketsCoverValuesWithBoundedError() {
+    long[] values = {0, 1, 31, 32, 33, 63, 64, 1000, 123_456, 1L << 30, (1L << 41) - 1};
+    for (long value : values) {
+      int index = LatencyHistogram.index(value);
+      long upper = LatencyHistogram.upperBound(index);
+      assertTrue(value + " above bucket", value <= upper);
+      assertTrue(value + " error too large", upper - value <= Math.max(1, value / 32));
+      if (index > 0) {
+        assertTrue(value + " below bucket", value > LatencyHistogram.upperBound(index - 1));
+      }
+    }
+    assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index((1L << 41) - 1));
+  }
+
+  @Test
+  public void percentilesWithinThreePercent() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10_000; i++) {
+      histogram.record(i);
+    }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    assertEquals(10_000, snapshot.getCount());
+    assertEquals(10_000, snapshot.getMax());
+    assertEquals(5000.5, snapshot.getMean(), 1e-9);
+    assertWithin(5000, snapshot.percentile(50));
+    assertWithin(9900, snapshot.percentile(99));
+    assertEquals(10_000, snapshot.percentile(100));
+    assertEquals(1, snapshot.percentile(0));
+  }
+
+  @Test
+  public void clampsOutOfRangeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+    assertEquals(2, histogram.getCount());
+    assertEquals((1L << 41) - 1, histogram.getMax());
+    assertEquals(0, histogram.snapshot().percentile(50));
+  }
+
+  @Test
+  public void sinceReturnsIntervalOnly() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(5000);
+    LatencyHistogram.Snapshot earlier = histogram.snapshot();
+    histogram.record(10);
+    histogram.record(20);
+    LatencyHistogram.Snapshot interval = histogram.snapshot().since(earlier);
+    assertEquals(2, interval.getCount());
+    assertEquals(20, interval.getMax());
+    assertEquals(15.0, interval.getMean(), 1e-9);
+    assertEquals(0, new LatencyHistogram().snapshot().percentile(99));
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(
+        "expected ~" + expected + " but was " + actual,
+        actual >= expected && actual <= expected + expected * 3 / 100);
+  }
+}
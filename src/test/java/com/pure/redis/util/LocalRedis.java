@@ -0,0 +1,91 @@
+package com.pure.redis.util;
+
+import org.junit.Assume;
+import org.junit.rules.ExternalResource;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPoolConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 测试用的本地redis-server 作为@ClassRule在随机端口启动,测试类结束时关闭
+ *
+ * <p>可用-Dredis.server指定可执行文件路径;找不到redis-server时整个测试类跳过,不算失败
+ */
+public class LocalRedis extends ExternalResource {
+  private Process process;
+  private JedisPool pool;
+
+  @Override
+  protected void before() throws Throwable {
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    String executable = System.getProperty("redis.server", "redis-server");
+    try {
+      process =
+          new ProcessBuilder(
+                  executable,
+                  "--port", String.valueOf(port),
+                  "--bind", "127.0.0.1",
+                  "--save", "",
+                  "--appendonly", "no")
+              .redirectOutput(
+                  new File(System.getProperty("java.io.tmpdir"), "test-redis-" + port + ".log"))
+              .redirectErrorStream(true)
+              .start();
+    } catch (IOException e) {
+      Assume.assumeNoException("redis-server not available", e);
+    }
+    pool = new JedisPool(new JedisPoolConfig(), "127.0.0.1", port);
+    awaitReady(port);
+  }
+
+  @Override
+  protected void after() {
+    if (pool != null) {
+      pool.close();
+    }
+    if (process != null) {
+      process.destroy();
+    }
+  }
+
+  /** 连接,用完关闭 */
+  public Jedis connect() {
+    return pool.getResource();
+  }
+
+  public JedisPool getPool() {
+    return pool;
+  }
+
+  /** 清空所有库,每个用例开始前调用 */
+  public void flush() {
+    try (Jedis jedis = connect()) {
+      jedis.flushAll();
+      jedis.scriptFlush();
+    }
+  }
+
+  private void awaitReady(int port) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (true) {
+      try (Jedis jedis = new Jedis("127.0.0.1", port)) {
+        if ("PONG".equals(jedis.ping())) {
+          return;
+        }
+      } catch (RuntimeException e) {
+        if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+          after();
+          Assume.assumeNoException("redis-server did not start on port " + port, e);
+        }
+      }
+      Thread.sleep(20);
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package com.pure.redis.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class Murmur3Test {
+  private static String hash(String s) {
+    return new Murmur3().putChars(s, 0, s.length()).toHex();
+  }
+
+  @Test
+  public void matchesReferenceOverUtf16le() {
+    // 参考值:MurmurHash3_x64_128(seed 0)对UTF-16LE字节的结果
+    assertEquals("00000000000000000000000000000000", hash(""));
+    assertEquals("96a698500b4e98bdb278c9bfc754677d", hash("a"));
+    assertEquals("ee2ee18fe1bfd3877b927262d8c336c4", hash("hello"));
+    assertEquals("98b60d016b9fd73941a8aa6f15662767", hash("http://example.com/page?a=1&b=2"));
+    assertEquals("493be8d18f025540d25a917494f707c1", hash("中文路径"));
+  }
+
+  @Test
+  public void streamingMatchesSinglePass() {
+    String s = "http://example.com/page?a=1&b=2";
+    Murmur3 hash = new Murmur3();
+    for (int i = 0; i < s.length(); i++) {
+      hash.putChar(s.charAt(i));
+    }
+    assertEquals(hash(s), hash.toHex());
+    assertEquals(hash(s.substring(5, 20)), new Murmur3().putChars(s, 5, 20).toHex());
+  }
+
+  @Test
+  public void resetAllowsReuse() {
+    Murmur3 hash = new Murmur3();
+    hash.putChars("something else", 0, 14).toHex();
+    assertEquals(hash("hello"), hash.reset().putChars("hello", 0, 5).toHex());
+  }
+}
@@ -0,0 +1,94 @@
+package com.pure.redis.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NearCacheTest {
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    NearCache<String> cache = new NearCache<>(2, 60);
+    cache.put("a", "1", 60);
+    cache.put("b", "2", 60);
+    // 访问a后b成为最久未用
+    assertEquals("1", cache.get("a"));
+    cache.put("c", "3", 60);
+    assertNull(cache.get("b"));
+    assertEquals("1", cache.get("a"));
+    assertEquals("3", cache.get("c"));
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void skipsNullValuesAndNonPositiveTtl() {
+    NearCache<String> cache = new NearCache<>(10, 60);
+    cache.put("a", null, 60);
+    cache.put("b", "2", 0);
+    cache.put("c", "3", -1);
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void expiresEntries() throws InterruptedException {
+    NearCache<String> cache = new NearCache<>(10, 1);
+    // ttl超过maxTtl时按maxTtl
+    cache.put("a", "1", 60);
+    cache.put("b", "2", 60);
+    Thread.sleep(1100);
+    assertNull(cache.get("a"));
+    cache.purgeExpired();
+    assertEquals(0, cache.size());
+    assertEquals(2, cache.getExpirations());
+  }
+
+  @Test
+  public void countsHitsAndMisses() {
+    NearCache<String> cache = new NearCache<>(10, 60);
+    cache.put("a", "1", 60);
+    cache.get("a");
+    cache.get("a");
+    cache.get("missing");
+    cache.invalidate("a");
+    cache.get("a");
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(0.5, cache.hitRate(), 1e-9);
+  }
+
+  @Test
+  public void segmentsShareCapacityAndCounters() {
+    NearCache<String> cache = new NearCache<>(64, 60, 4);
+    assertEquals(4, cache.segments());
+    for (int i = 0; i < 1000; i++) {
+      cache.put("k" + i, "v" + i, 60);
+    }
+    // 每段16条,总数不超过容量
+    assertEquals(64, cache.size());
+    assertEquals(1000 - 64, cache.getEvictions());
+    int hits = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (cache.get("k" + i) != null) {
+        hits++;
+      }
+    }
+    assertEquals(64, hits);
+    assertEquals(64, cache.getHits());
+    assertEquals(1000 - 64, cache.getMisses());
+  }
+
+  @Test
+  public void smallCachesUseOneSegment() {
+    assertEquals(1, new NearCache<String>(100, 60).segments());
+    assertEquals(16, new NearCache<String>(100_000, 60).segments());
+    // 段数取2的幂且不超过容量
+    assertEquals(4, new NearCache<String>(1000, 60, 3).segments());
+    assertEquals(2, new NearCache<String>(3, 60, 16).segments());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsNonPositiveSize() {
+    new NearCache<String>(0, 60);
+  }
+}
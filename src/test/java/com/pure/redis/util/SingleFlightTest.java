@@ -0,0 +1,118 @@
+package com.pure.redis.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+  private final SingleFlight<String> flight = new SingleFlight<>();
+
+  @Test
+  public void concurrentCallersShareOneLoad() throws Exception {
+    int threads = 8;
+    AtomicInteger loads = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      Future<String> leader =
+          executor.submit(
+              () ->
+                  flight.execute(
+                      "k",
+                      () -> {
+                        loads.incrementAndGet();
+                        started.countDown();
+                        await(release);
+                        return "v";
+                      }));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      List<Future<String>> followers = new ArrayList<>();
+      for (int i = 1; i < threads; i++) {
+        followers.add(
+            executor.submit(
+                () ->
+                    flight.execute(
+                        "k",
+                        () -> {
+                          loads.incrementAndGet();
+                          return "other";
+                        })));
+      }
+      // 让跟随者都进入等待
+      Thread.sleep(100);
+      release.countDown();
+      assertEquals("v", leader.get(5, TimeUnit.SECONDS));
+      for (Future<String> follower : followers) {
+        assertEquals("v", follower.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, loads.get());
+      assertFalse(flight.isInFlight("k"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void tryExecuteSkipsWhileInFlight() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    Thread leader =
+        new Thread(
+            () ->
+                flight.execute(
+                    "k",
+                    () -> {
+                      started.countDown();
+                      await(release);
+                      return "v";
+                    }));
+    leader.start();
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    assertTrue(flight.isInFlight("k"));
+    assertNull(flight.tryExecute("k", () -> "other"));
+    assertEquals("x", flight.tryExecute("another", () -> "x"));
+    release.countDown();
+    leader.join(5000);
+    assertEquals("y", flight.tryExecute("k", () -> "y"));
+  }
+
+  @Test
+  public void failureReachesCallerAndClearsKey() {
+    IllegalStateException failure = new IllegalStateException("boom");
+    try {
+      flight.execute(
+          "k",
+          () -> {
+            throw failure;
+          });
+      fail();
+    } catch (IllegalStateException e) {
+      assertSame(failure, e);
+    }
+    assertFalse(flight.isInFlight("k"));
+    assertEquals("v", flight.execute("k", () -> "v"));
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}